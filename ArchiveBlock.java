@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * What an ArchiveReader knows about one block of a HuffmanArchive: where its codes are, the code table,
+ * and where every record starts, both in the original bytes and in the bitstream.
+ * Only read once built, so it can be shared by any number of reader threads.
+ */
+public class ArchiveBlock {
+    private final long position;          // file position of the block's size field
+    private final long payloadPosition;   // file position of the first code
+    private final long firstRecord;       // archive-wide number of the block's first record
+    private final int rawLength;          // number of original bytes
+    private final int crc;                // CRC-32 of the original bytes
+    private final HuffmanTable table;     // code the block is written with
+    private final int[] recordStarts;     // start of every record in the original bytes, and rawLength at the end
+    private final long[] recordBits;      // start of every record in the bitstream, and its length at the end
+
+    /**
+     * Reads a block's header, table and record index
+     * @param archive archive file
+     * @param position file position of the block's size field
+     * @param firstRecord archive-wide number of the block's first record
+     * @param previousTable table of the block before, for blocks that reuse it
+     * @throws IOException if the block is cut short or corrupt
+     */
+    public ArchiveBlock(MappedInput archive, long position, long firstRecord, HuffmanTable previousTable) throws IOException {
+        this.position = position;
+        this.firstRecord = firstRecord;
+
+        ByteBuffer header = read(archive, position, HuffmanArchive.BLOCK_HEADER_SIZE);
+        int blockSize = header.getInt();
+        int tableMode = header.get();
+        int recordCount = header.getInt();
+        rawLength = header.getInt();
+        crc = header.getInt();
+        int indexSize = header.getInt();
+        long next = position + HuffmanArchive.BLOCK_HEADER_SIZE;
+        // checked before anything is allocated with them; every record takes at least 2 bytes of index
+        if (blockSize < 0 || position + 4 + blockSize > archive.length() || rawLength < 0
+                || indexSize < 0 || indexSize > archive.length() - next || recordCount < 0 || recordCount > indexSize / 2) {
+            throw new IOException("Corrupt block at " + position);
+        }
+
+        // table stored with the block, or the one of the block before
+        if (tableMode == HuffmanArchive.TABLE_INLINE) {
+            int symbols = (read(archive, next, 1).get() & 0xFF) + 1;
+            byte[] lengths = read(archive, next, 1 + 2 * symbols).array();
+            table = new HuffmanTable();
+            table.readLengths(lengths, 0, lengths.length);
+            next += lengths.length;
+        }
+        else if (tableMode == HuffmanArchive.TABLE_PREVIOUS && previousTable != null) {
+            table = previousTable;
+        }
+        else { throw new IOException("Invalid table in block at " + position); }
+
+        // index: length and number of bits of every record
+        byte[] index = read(archive, next, indexSize).array();
+        recordStarts = new int[recordCount + 1];
+        recordBits = new long[recordCount + 1];
+        int i = 0;
+        for (int r = 0; r < recordCount; r++) {
+            long length = VarInt.read(index, i, indexSize);
+            i += VarInt.size(length);
+            long bits = VarInt.read(index, i, indexSize);
+            i += VarInt.size(bits);
+            if (length < 0 || length > rawLength - recordStarts[r] || bits < 0) { throw new IOException("Corrupt record index in block at " + position); }
+            recordStarts[r + 1] = recordStarts[r] + (int)length;
+            recordBits[r + 1] = recordBits[r] + bits;
+        }
+        if (recordStarts[recordCount] != rawLength) { throw new IOException("Corrupt record index in block at " + position); }
+
+        payloadPosition = next + indexSize;
+        if (payloadPosition + payloadSize() > position + 4 + blockSize) {
+            throw new IOException("Corrupt block at " + position);
+        }
+    }
+
+    /**
+     * @param archive file to read from
+     * @param position file position of the first byte
+     * @param length number of bytes
+     * @return the bytes, in a buffer backed by an array and positioned at 0
+     * @throws IOException if the file ends first
+     */
+    public static ByteBuffer read(MappedInput archive, long position, int length) throws IOException {
+        if (length < 0 || position < 0 || position > archive.length() - length) { throw new IOException("File cut short"); }
+        byte[] bytes = new byte[length];
+        archive.get(position, bytes, 0, length);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    // getters
+    public long getPosition(){return position;}
+    public long getFirstRecord(){return firstRecord;}
+    public int getRecordCount(){return recordStarts.length - 1;}
+    public int getRawLength(){return rawLength;}
+    public int getCrc(){return crc;}
+    public HuffmanTable getTable(){return table;}
+
+    /**
+     * @param record number of the record within the block, or getRecordCount() for the end of the last one
+     * @return where the record starts in the block's original bytes
+     */
+    public int getRecordStart(int record){
+        return recordStarts[record];
+    }
+
+    /**
+     * @return number of bytes of codes
+     */
+    public int payloadSize(){
+        return (int)((recordBits[recordBits.length - 1] + 7) / 8);
+    }
+
+    /**
+     * @return file position after the last byte of the block
+     */
+    public long getEnd(){
+        return payloadPosition + payloadSize();
+    }
+
+    /**
+     * @param byteInBlock position in the block's original bytes
+     * @return number of the record within the block holding it
+     */
+    public int recordOf(int byteInBlock){
+        int r = Arrays.binarySearch(recordStarts, byteInBlock);
+        // inside a record: binarySearch gives -(insertion point) - 1, the record is the one before
+        return r >= 0 ? r : -r - 2;
+    }
+
+    /**
+     * @return the codes of all records
+     * @throws IOException if the file ends first
+     */
+    public byte[] readPayload(MappedInput archive) throws IOException {
+        return read(archive, payloadPosition, payloadSize()).array();
+    }
+
+    /**
+     * @param record number of the record within the block
+     * @return its original bytes, line terminator included
+     * @throws IOException if the codes can't be read or are corrupt
+     */
+    public byte[] decodeRecord(MappedInput archive, int record) throws IOException {
+        long startBit = recordBits[record];
+        long endBit = recordBits[record + 1];
+        int firstByte = (int)(startBit >>> 3);
+        byte[] codes = read(archive, payloadPosition + firstByte, (int)((endBit + 7) >>> 3) - firstByte).array();
+
+        byte[] output = new byte[recordStarts[record + 1] - recordStarts[record]];
+        BitArrayReader input = new BitArrayReader();
+        input.reset(codes, 0, codes.length);
+        input.seek(startBit & 7);
+        table.decode(input, output, 0, output.length);
+        if (input.overrun()) { throw new IOException("Corrupt record " + (firstRecord + record)); }
+        return output;
+    }
+
+    /**
+     * @return all of the block's original bytes
+     * @throws IOException if the codes can't be read or are corrupt
+     */
+    public byte[] decodeAll(MappedInput archive) throws IOException {
+        byte[] codes = readPayload(archive);
+
+        byte[] output = new byte[rawLength];
+        BitArrayReader input = new BitArrayReader();
+        input.reset(codes, 0, codes.length);
+        table.decode(input, output, 0, rawLength);
+        if (input.overrun()) { throw new IOException("Corrupt block at " + position); }
+        return output;
+    }
+
+    /**
+     * Decodes the whole block into a scratch array and checks it against its index and checksum
+     * @param archive archive file
+     * @param sink array to decode into, at least getRawLength() long, its contents are thrown away
+     * @param input reader to reuse
+     * @param crc checksum to reuse
+     * @return what is wrong with the block, or null if nothing
+     * @throws IOException if the codes can't be read
+     */
+    public String check(MappedInput archive, byte[] sink, BitArrayReader input, CRC32 crc) throws IOException {
+        byte[] codes = readPayload(archive);
+        input.reset(codes, 0, codes.length);
+        try {
+            // record by record, so a wrong index is noticed too
+            for (int r = 0; r < getRecordCount(); r++) {
+                table.decode(input, sink, recordStarts[r], recordStarts[r + 1] - recordStarts[r]);
+                if (input.bitPosition() != recordBits[r + 1]) {
+                    return "record " + (firstRecord + r) + " has " + (input.bitPosition() - recordBits[r])
+                            + " bits of codes, index says " + (recordBits[r + 1] - recordBits[r]);
+                }
+            }
+        }
+        catch (IOException e) {
+            return e.getMessage();
+        }
+
+        crc.reset();
+        crc.update(sink, 0, rawLength);
+        if ((int)crc.getValue() != this.crc) { return "checksum mismatch"; }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Random access to the records of a HuffmanArchive. Opening reads every block's table and record index,
+ * after which any record is decoded on its own, reading only the bytes that hold its codes.
+ * The archive is read through a MappedInput, so once it is in the page cache decoding makes no system calls,
+ * and one reader can be shared by any number of threads.
+ * With a BlockCache, records are copied from the whole decoded block, which is decoded once and kept.
+ */
+public class ArchiveReader {
+    private final MappedInput input;
+    private final long originalLength;
+    private final long recordCount;
+    private final List<ArchiveBlock> blocks = new ArrayList<>();
+    private final long[] firstRecords;          // archive-wide number of every block's first record
+    private final String cacheName;             // what the blocks are cached under: path and modification time
+    private volatile BlockCache blockCache;     // decoded blocks, null to decode every record on its own
+
+    /**
+     * @param archivePath archive written by ArchiveWriter
+     * @throws IOException if the file can't be read, or isn't an archive of a known version
+     */
+    public ArchiveReader(String archivePath) throws IOException {
+        Path path = Paths.get(archivePath).toAbsolutePath().normalize();
+        input = new MappedInput(path.toString());
+        try {
+            // a rewritten archive must not get the blocks cached for the old one
+            cacheName = path + "@" + Files.getLastModifiedTime(path).toMillis();
+
+            ByteBuffer header = ArchiveBlock.read(input, 0, HuffmanArchive.HEADER_SIZE);
+            byte[] magic = new byte[HuffmanArchive.magic.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, HuffmanArchive.magic)) { throw new IOException(archivePath + " is not an archive"); }
+            int version = header.get();
+            if (version != HuffmanArchive.FORMAT_VERSION) { throw new IOException("Unknown archive version " + version); }
+            header.position(header.position() + 3);
+            originalLength = header.getLong();
+            recordCount = header.getLong();
+            int blockCount = header.getInt();
+            // every block takes at least its fixed fields
+            if (originalLength < 0 || recordCount < 0 || blockCount < 0
+                    || blockCount > (input.length() - HuffmanArchive.HEADER_SIZE) / HuffmanArchive.BLOCK_HEADER_SIZE) {
+                throw new IOException("Corrupt archive header");
+            }
+
+            // every block starts where the one before ends
+            firstRecords = new long[blockCount];
+            long position = HuffmanArchive.HEADER_SIZE;
+            long record = 0;
+            HuffmanTable previousTable = null;
+            for (int b = 0; b < blockCount; b++) {
+                ArchiveBlock block = new ArchiveBlock(input, position, record, previousTable);
+                blocks.add(block);
+                firstRecords[b] = record;
+                record += block.getRecordCount();
+                position = block.getEnd();
+                previousTable = block.getTable();
+            }
+            if (record != recordCount) { throw new IOException("Corrupt archive header"); }
+        }
+        catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    // getters
+    public long getOriginalLength(){return originalLength;}
+    public long getRecordCount(){return recordCount;}
+    public int getBlockCount(){return blocks.size();}
+    public ArchiveBlock getBlock(int b){return blocks.get(b);}
+    MappedInput getInput(){return input;}
+
+    /**
+     * @param blockCache decoded blocks to read records from, shared with other readers if wished;
+     *                   null to decode only the codes of the record asked for
+     */
+    public void setBlockCache(BlockCache blockCache){
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * @param record archive-wide record number
+     * @return number of the block holding it
+     */
+    public int blockOf(long record){
+        if (record < 0 || record >= recordCount) { throw new IndexOutOfBoundsException("No record " + record); }
+        int b = Arrays.binarySearch(firstRecords, record);
+        // not a block's first record: binarySearch gives -(insertion point) - 1, the block is the one before
+        return b >= 0 ? b : -b - 2;
+    }
+
+    /**
+     * @param record archive-wide record number, from 0
+     * @return the record's original bytes, line terminator included
+     * @throws IOException if the record can't be read or is corrupt
+     */
+    public byte[] readRecordBytes(long record) throws IOException {
+        ArchiveBlock block = blocks.get(blockOf(record));
+        int r = (int)(record - block.getFirstRecord());
+        BlockCache cache = blockCache;
+        if (cache == null) { return block.decodeRecord(input, r); }
+
+        byte[] decoded = decodedBlock(block, cache);
+        return Arrays.copyOfRange(decoded, block.getRecordStart(r), block.getRecordStart(r + 1));
+    }
+
+    /**
+     * @param block block to decode
+     * @param cache where to look for the block first, and keep it after decoding
+     * @return the block's original bytes, not to be changed
+     * @throws IOException if the block can't be read or is corrupt
+     */
+    private byte[] decodedBlock(ArchiveBlock block, BlockCache cache) throws IOException {
+        byte[] decoded = cache.get(cacheName, block.getPosition());
+        if (decoded == null) {
+            decoded = block.decodeAll(input);
+            cache.put(cacheName, block.getPosition(), decoded);
+        }
+        return decoded;
+    }
+
+    /**
+     * @param record archive-wide record number, from 0
+     * @return the record as a line of text, without its line terminator
+     * @throws IOException if the record can't be read or is corrupt
+     */
+    public String readRecord(long record) throws IOException {
+        byte[] bytes = readRecordBytes(record);
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\n') { length--; }
+        if (length > 0 && bytes[length - 1] == '\r') { length--; }
+        return new String(bytes, 0, length, Charset.defaultCharset());
+    }
+
+    /**
+     * @param b block number
+     * @return all of the block's original bytes
+     * @throws IOException if the block can't be read or is corrupt
+     */
+    public byte[] readBlock(int b) throws IOException {
+        BlockCache cache = blockCache;
+        if (cache == null) { return blocks.get(b).decodeAll(input); }
+        return decodedBlock(blocks.get(b), cache).clone();
+    }
+
+    /**
+     * Close this reader.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a HuffmanArchive: records are collected into blocks of about blockSize bytes, and every block is
+ * written with its own code table, or the previous block's if that is no bigger.
+ * The file header is only filled in by close: a new archive that isn't closed can't be read, and blocks
+ * appended to an existing one only show once it is closed.
+ */
+public class ArchiveWriter {
+    private final RandomAccessFile file;
+    private final DataOutputStream output;       // blocks, written from the end of the file on
+    private final int blockSize;                 // original bytes collected before a block is written
+
+    private long originalLength;                 // totals for the file header
+    private long recordCount;
+    private int blockCount;
+    private HuffmanTable previousTable;          // table of the last block written, null for none
+
+    // records of the block being collected
+    private byte[] block = new byte[0];
+    private int blockLength;
+    private int[] recordLengths = new int[16];
+    private int blockRecords;
+
+    /**
+     * Starts a new, empty archive
+     * @param archivePath where to write the archive, replaced if it exists
+     * @param blockSize original bytes per block
+     * @throws IOException if the file can't be written
+     */
+    public ArchiveWriter(String archivePath, int blockSize) throws IOException {
+        this(new RandomAccessFile(archivePath, "rw"), 0, blockSize);
+    }
+
+    /**
+     * @param file archive file
+     * @param end where the last block ends, anything after it is dropped; 0 for a new archive
+     * @param blockSize original bytes per block
+     */
+    private ArchiveWriter(RandomAccessFile file, long end, int blockSize) throws IOException {
+        this.file = file;
+        this.blockSize = blockSize;
+        // no truncating when there's nothing to drop: a mapped file can't be resized on some systems
+        if (file.length() != end) { file.setLength(end); }
+        file.seek(end);
+        if (end == 0) { file.write(new byte[HuffmanArchive.HEADER_SIZE]); }     // filled in by close
+        this.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), 1 << 16));
+    }
+
+    /**
+     * Opens an existing archive to add records at its end. Earlier blocks are neither decoded nor rewritten,
+     * the first new block may reuse the table of the last one. Records added never join the last record
+     * already there, even if it has no line terminator.
+     * Until close the file header still describes the old blocks only, so an append that fails part way
+     * leaves the archive as it was.
+     * @param archivePath archive written by ArchiveWriter
+     * @param blockSize original bytes per new block
+     * @return a writer adding to the archive
+     * @throws IOException if the archive can't be read or written
+     */
+    public static ArchiveWriter append(String archivePath, int blockSize) throws IOException {
+        ArchiveReader existing = new ArchiveReader(archivePath);
+        long end = HuffmanArchive.HEADER_SIZE;
+        HuffmanTable lastTable = null;
+        try {
+            if (existing.getBlockCount() > 0) {
+                ArchiveBlock last = existing.getBlock(existing.getBlockCount() - 1);
+                end = last.getEnd();
+                lastTable = last.getTable();
+            }
+        }
+        finally {
+            existing.close();
+        }
+
+        ArchiveWriter writer = new ArchiveWriter(new RandomAccessFile(archivePath, "rw"), end, blockSize);
+        writer.originalLength = existing.getOriginalLength();
+        writer.recordCount = existing.getRecordCount();
+        writer.blockCount = existing.getBlockCount();
+        writer.previousTable = lastTable;
+        return writer;
+    }
+
+    /**
+     * Adds a record, writing a block if enough have been collected
+     * @param record array holding the record's bytes, line terminator included
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @throws IOException if a block can't be written
+     */
+    public void writeRecord(byte[] record, int offset, int length) throws IOException {
+        if (blockLength + length > block.length) {
+            block = Arrays.copyOf(block, Math.max(blockLength + length, Math.max(blockSize, 2 * block.length)));
+        }
+        System.arraycopy(record, offset, block, blockLength, length);
+        blockLength += length;
+
+        if (blockRecords == recordLengths.length) { recordLengths = Arrays.copyOf(recordLengths, 2 * blockRecords); }
+        recordLengths[blockRecords++] = length;
+
+        if (blockLength >= blockSize) { writeBlock(); }
+    }
+
+    /**
+     * Adds every line of a stream as a record
+     * @param input stream to read up to its end
+     * @throws IOException if reading or writing fails
+     */
+    public void writeLines(InputStream input) throws IOException {
+        InputStream in = new BufferedInputStream(input, 1 << 16);
+        byte[] line = new byte[256];
+        int length = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (length == line.length) { line = Arrays.copyOf(line, 2 * length); }
+            line[length++] = (byte)c;
+            if (c == '\n') {
+                writeRecord(line, 0, length);
+                length = 0;
+            }
+        }
+        // last line without a terminator
+        if (length > 0) { writeRecord(line, 0, length); }
+    }
+
+    /**
+     * Codes and writes the records collected so far as one block
+     * @throws IOException if the block can't be written
+     */
+    public void writeBlock() throws IOException {
+        if (blockRecords == 0) { return; }
+
+        long[] histogram = new long[HuffmanTable.SYMBOLS];
+        for (int i = 0; i < blockLength; i++) {
+            histogram[block[i] & 0xFF]++;
+        }
+
+        // keep the previous block's table when it's no bigger than a new one with its lengths stored
+        HuffmanTable table = new HuffmanTable();
+        table.build(histogram);
+        long previousBits = previousTable != null ? previousTable.encodedBits(histogram) : -1;
+        boolean reuse = previousBits >= 0 && previousBits <= table.encodedBits(histogram) + 8L * table.lengthsSize();
+        if (reuse) { table = previousTable; }
+
+        // codes of all records one after the other, and the length and number of bits of each
+        byte[] payload = new byte[(int)((table.encodedBits(histogram) + 7) / 8)];
+        byte[] index = new byte[2 * VarInt.MAX_SIZE * blockRecords];
+        BitArrayWriter bits = new BitArrayWriter();
+        bits.reset(payload, 0);
+        int indexSize = 0;
+        int start = 0;
+        for (int r = 0; r < blockRecords; r++) {
+            long before = bits.bitPosition();
+            table.encode(bits, block, start, recordLengths[r]);
+            start += recordLengths[r];
+            indexSize = VarInt.write(index, indexSize, recordLengths[r]);
+            indexSize = VarInt.write(index, indexSize, bits.bitPosition() - before);
+        }
+        bits.flush();
+
+        byte[] lengths = new byte[reuse ? 0 : table.lengthsSize()];
+        if (!reuse) { table.writeLengths(lengths, 0); }
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, blockLength);
+
+        output.writeInt(HuffmanArchive.BLOCK_HEADER_SIZE - 4 + lengths.length + indexSize + payload.length);
+        output.writeByte(reuse ? HuffmanArchive.TABLE_PREVIOUS : HuffmanArchive.TABLE_INLINE);
+        output.writeInt(blockRecords);
+        output.writeInt(blockLength);
+        output.writeInt((int)crc.getValue());
+        output.writeInt(indexSize);
+        output.write(lengths);
+        output.write(index, 0, indexSize);
+        output.write(payload);
+
+        originalLength += blockLength;
+        recordCount += blockRecords;
+        blockCount++;
+        previousTable = table;
+        blockLength = 0;
+        blockRecords = 0;
+    }
+
+    /**
+     * Writes the last block and the file header
+     * @throws IOException if writing fails
+     */
+    public void close() throws IOException {
+        try {
+            writeBlock();
+            output.flush();
+
+            file.seek(0);
+            file.write(HuffmanArchive.magic);
+            file.writeByte(HuffmanArchive.FORMAT_VERSION);
+            file.write(new byte[3]);
+            file.writeLong(originalLength);
+            file.writeLong(recordCount);
+            file.writeInt(blockCount);
+            file.writeInt(0);
+        }
+        finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses a whole directory (or list) of files with TextEncoder, as HuffmanEncodingEC.compress does, one task per file.
+ * Tasks run on virtual threads when the JVM has them, otherwise on a fixed pool; either way
+ * at most maxConcurrency files are being compressed at any one time.
+ * With a DedupCache, files whose content was compressed before are copied from the cache instead.
+ */
+public class BatchCompression {
+
+    private static final boolean debugFlag = false;   // used to check if the code is working
+    // suffixes written by HuffmanEncodingEC, never compressed again when listing a directory
+    private static final String compressedSuffix = "_compressedEC.txt";
+    private static final String decompressedSuffix = "_decompressedEC.txt";
+
+    /**
+     * @param directory folder to list
+     * @return path names of all regular files in the folder that are not outputs of a previous run
+     */
+    public static List<String> listFiles(String directory){
+        List<String> fileNames = new ArrayList<>();
+        File[] files = new File(directory).listFiles();
+
+        // make sure the directory exists
+        if (files == null) {
+            System.err.println("Cannot open directory " + directory);
+            return fileNames;
+        }
+
+        for (File f : files) {
+            String name = f.getName();
+            if (f.isFile() && name.length() > 4 && !name.endsWith(compressedSuffix) && !name.endsWith(decompressedSuffix)) {
+                fileNames.add(f.getPath());
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Compresses every file in the list and prints the aggregate throughput when done
+     * @param fileNames files to compress, each gets its own _compressedEC.txt next to it
+     * @param maxConcurrency most files compressed at the same time
+     * @param largestFirst whether to start with the biggest files, so one large file doesn't finish last on its own
+     */
+    public static void compressAll(List<String> fileNames, int maxConcurrency, boolean largestFirst){
+        compressAll(fileNames, maxConcurrency, largestFirst, null);
+    }
+
+    /**
+     * Compresses every file in the list, reusing compressed files from a cache for content seen before
+     * @param fileNames files to compress, each gets its own _compressedEC.txt next to it
+     * @param maxConcurrency most files compressed at the same time
+     * @param largestFirst whether to start with the biggest files
+     * @param cache compressed files by content, updated and saved when done; null to compress every file
+     */
+    public static void compressAll(List<String> fileNames, int maxConcurrency, boolean largestFirst, DedupCache cache){
+        List<String> order = new ArrayList<>(fileNames);
+        if (largestFirst) {
+            // every length read once, files growing during the sort must not change the order under it
+            List<Map.Entry<String, Long>> sized = new ArrayList<>();
+            for (String fileName : fileNames) {
+                sized.add(new AbstractMap.SimpleImmutableEntry<>(fileName, new File(fileName).length()));
+            }
+            sized.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            order.clear();
+            for (Map.Entry<String, Long> file : sized) { order.add(file.getKey()); }
+        }
+
+        // fair, so files are started in the order they were submitted
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency), true);
+        ExecutorService executor = newExecutor(Math.max(1, maxConcurrency));
+        AtomicInteger filesDone = new AtomicInteger();
+        AtomicLong bytesIn = new AtomicLong();
+        AtomicLong bytesOut = new AtomicLong();
+
+        long start = System.nanoTime();
+        for (String fileName : order) {
+            executor.execute(() -> {
+                try {
+                    permits.acquire();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    File compressed = new File(fileName.substring(0, fileName.length()-4) + compressedSuffix);
+                    try {
+                        if (cache == null) {
+                            TextEncoder.forFile(fileName).compress(fileName, compressed.getPath());
+                        }
+                        else {
+                            compressCached(fileName, compressed.getPath(), cache);
+                        }
+                    }
+                    catch (IOException e) {
+                        // failed files are left out of the totals
+                        System.err.println("Cannot compress " + fileName + ".\n" + e.getMessage());
+                        return;
+                    }
+
+                    filesDone.incrementAndGet();
+                    bytesIn.addAndGet(new File(fileName).length());
+                    bytesOut.addAndGet(compressed.length());
+
+                    // used for debugging purposes
+                    if (debugFlag) {
+                        System.out.println("compressed " + fileName);}
+                }
+                finally {
+                    permits.release();
+                }
+            });
+        }
+
+        // wait for every file to be compressed
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println(filesDone.get() + "/" + order.size() + " files compressed");
+            }
+        }
+        catch (InterruptedException e) {
+            System.err.println("Interrupted while waiting for batch.\n" + e.getMessage());
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (cache != null) {
+            try {
+                cache.save();
+            }
+            catch (IOException e) {
+                System.err.println("Cannot save dedup index.\n" + e.getMessage());
+            }
+            System.out.println("dedup cache: " + cache);
+        }
+
+        System.out.println(filesDone.get() + " files, " + bytesIn.get() + " bytes in, " + bytesOut.get() + " bytes out");
+        System.out.printf("%.3f s, %.1f files/s, %.2f MB/s%n", seconds, filesDone.get() / seconds,
+                bytesIn.get() / 1e6 / seconds);
+    }
+
+    /**
+     * Copies the compressed file from the cache if the content was compressed before, else compresses it
+     * and adds the result to the cache. Cache problems are printed and fall back to plain compression;
+     * only files compressed without error are added to the cache.
+     * @param fileName file to compress
+     * @param compressedName where to write the compressed file
+     * @param cache compressed files by content
+     * @throws IOException if the file can't be compressed
+     */
+    private static void compressCached(String fileName, String compressedName, DedupCache cache) throws IOException {
+        long hash;
+        long length = new File(fileName).length();
+        try {
+            hash = ContentHash.hashFile(fileName);
+            if (cache.restore(hash, length, compressedName)) {
+                // used for debugging purposes
+                if (debugFlag) {
+                    System.out.println("restored " + fileName);}
+                return;
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Dedup cache failed for " + fileName + ".\n" + e.getMessage());
+            TextEncoder.forFile(fileName).compress(fileName, compressedName);
+            return;
+        }
+
+        // throws if compression fails, so nothing half written is cached
+        TextEncoder.forFile(fileName).compress(fileName, compressedName);
+        try {
+            cache.store(hash, length, compressedName);
+        }
+        catch (IOException e) {
+            System.err.println("Cannot cache " + compressedName + ".\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * @param maxConcurrency pool size used when virtual threads aren't available
+     * @return a virtual thread per task executor on Java 21+, else a fixed pool of platform threads
+     */
+    private static ExecutorService newExecutor(int maxConcurrency){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newFixedThreadPool(maxConcurrency);
+        }
+    }
+
+    /**
+     * Usage: java BatchCompression [-j concurrency] [-largest] [-dedup cacheFolder [-dedupMax megabytes]] directory|file...
+     */
+    public static void main(String[] args) {
+        int maxConcurrency = Runtime.getRuntime().availableProcessors();
+        boolean largestFirst = false;
+        String cacheFolder = null;
+        long cacheMegabytes = 1024;
+        List<String> fileNames = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i+1 < args.length) {
+                maxConcurrency = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-largest")) {
+                largestFirst = true;
+            }
+            else if (args[i].equals("-dedup") && i+1 < args.length) {
+                cacheFolder = args[++i];
+            }
+            else if (args[i].equals("-dedupMax") && i+1 < args.length) {
+                cacheMegabytes = Long.parseLong(args[++i]);
+            }
+            else if (new File(args[i]).isDirectory()) {
+                fileNames.addAll(listFiles(args[i]));
+            }
+            else {
+                fileNames.add(args[i]);
+            }
+        }
+
+        if (fileNames.isEmpty()) {
+            System.err.println("Usage: java BatchCompression [-j concurrency] [-largest] "
+                    + "[-dedup cacheFolder [-dedupMax megabytes]] directory|file...");
+            return;
+        }
+
+        DedupCache cache = null;
+        if (cacheFolder != null) {
+            try {
+                cache = new DedupCache(cacheFolder, cacheMegabytes << 20);
+            }
+            catch (IOException e) {
+                System.err.println("Cannot open dedup cache " + cacheFolder + ".\n" + e.getMessage());
+                return;
+            }
+        }
+        compressAll(fileNames, maxConcurrency, largestFirst, cache);
+    }
+}
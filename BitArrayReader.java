@@ -0,0 +1,106 @@
+/**
+ * Reads bits from a byte array, most significant bit first.
+ * Keeps up to 64 bits buffered so a whole code can be looked at with peekBits before it is consumed.
+ * Reading past the end returns 0's; check overrun once at the end instead of on every bit.
+ * Can be pointed at a new array with reset, so one reader can be reused without allocating.
+ */
+public class BitArrayReader {
+    private byte[] input;           // array being read
+    private int start;              // first byte of this run
+    private int position;           // next byte to move into bitBuffer
+    private int end;                // index after the last byte that may be read
+    private long bitBuffer;         // buffered bits, left aligned
+    private int bitCount;           // number of valid bits in bitBuffer
+    private long bitsConsumed;      // bits skipped since the last reset
+
+    /**
+     * Starts reading at a new place
+     * @param input array to read from
+     * @param offset index of the first byte to read
+     * @param end index after the last byte to read
+     */
+    public void reset(byte[] input, int offset, int end){
+        this.input = input;
+        this.start = offset;
+        this.position = offset;
+        this.end = end;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+        this.bitsConsumed = 0;
+    }
+
+    /**
+     * Moves to a bit relative to the offset given to reset
+     * @param bitOffset number of bits to skip from the start
+     */
+    public void seek(long bitOffset){
+        position = start + (int)(bitOffset >>> 3);
+        bitBuffer = 0;
+        bitCount = 0;
+        bitsConsumed = bitOffset & ~7L;
+        refill();
+        skipBits((int)(bitOffset & 7));
+    }
+
+    /**
+     * Tops up the buffer so at least 57 bits can be peeked
+     */
+    public void refill(){
+        while (bitCount <= 56) {
+            long b = position < end ? input[position] & 0xFF : 0;
+            position++;
+            bitBuffer |= b << (56 - bitCount);
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * @param length number of bits to look at, at most 32, refill must have been called since enough were skipped
+     * @return the next length bits, right aligned, without consuming them
+     */
+    public int peekBits(int length){
+        return (int)(bitBuffer >>> (64 - length));
+    }
+
+    /**
+     * @param length number of bits to consume
+     */
+    public void skipBits(int length){
+        bitBuffer <<= length;
+        bitCount -= length;
+        bitsConsumed += length;
+    }
+
+    /**
+     * @param length number of bits to read, at most 32
+     * @return the bits, right aligned
+     */
+    public int readBits(int length){
+        if (bitCount < length) { refill(); }
+        int bits = peekBits(length);
+        skipBits(length);
+        return bits;
+    }
+
+    /**
+     * Reads a bit and returns it as a false or a true
+     * @return the bit read
+     */
+    public boolean readBit(){
+        return readBits(1) == 1;
+    }
+
+    /**
+     * @return number of bits consumed since the last reset
+     */
+    public long bitPosition(){
+        return bitsConsumed;
+    }
+
+    /**
+     * @return whether more bits were consumed than the array held
+     */
+    public boolean overrun(){
+        return bitsConsumed > (long)(end - start) * 8;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Writes bits into a byte array, most significant bit first.
+ * Like BufferedBitWriterEC but in memory, and a whole code at a time instead of bit by bit.
+ * Can be pointed at a new array with reset, so one writer can be reused without allocating.
+ */
+public class BitArrayWriter {
+    private byte[] output;          // array being filled
+    private int start;              // first byte written by this run
+    private int position;           // next byte to write
+    private long bitBuffer;         // bits not yet written, in the low bitCount bits
+    private int bitCount;           // number of bits waiting in bitBuffer, always less than 8 between calls
+
+    /**
+     * Starts writing at a new place
+     * @param output array to write into
+     * @param offset index of the first byte to write
+     */
+    public void reset(byte[] output, int offset){
+        this.output = output;
+        this.start = offset;
+        this.position = offset;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+    }
+
+    /**
+     * @param code bits to write, right aligned
+     * @param length number of bits of code to write, at most 32
+     */
+    public void writeBits(int code, int length){
+        bitBuffer = (bitBuffer << length) | (code & 0xFFFFFFFFL);
+        bitCount += length;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            output[position++] = (byte)(bitBuffer >>> bitCount);
+        }
+    }
+
+    /**
+     * writes a single bit
+     * @param bit the bit to be written
+     */
+    public void writeBit(boolean bit){
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * @return number of bits written since the last reset
+     */
+    public long bitPosition(){
+        return (long)(position - start) * 8 + bitCount;
+    }
+
+    /**
+     * Writes any partial byte, padded with 0's
+     * @return index after the last byte written
+     */
+    public int flush(){
+        if (bitCount > 0) {
+            output[position++] = (byte)(bitBuffer << (8 - bitCount));
+            bitCount = 0;
+        }
+        return position;
+    }
+}
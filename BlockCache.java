@@ -0,0 +1,180 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decoded archive blocks kept in memory, so records of hot blocks are copied out instead of decoded again.
+ * Blocks are found by their archive and file position, and the least recently used ones are dropped once
+ * the decoded bytes add up to more than maxBytes.
+ *
+ * The cache is split in stripes, each with its own lock, LRU order and share of maxBytes, so reader threads
+ * only wait for each other when they want blocks of the same stripe. Blocks are decoded outside any lock;
+ * two threads missing the same block at once both decode it.
+ * Safe to share between threads and archives.
+ */
+public class BlockCache {
+    public static final int DEFAULT_STRIPES = 16;                  // most stripes the one-argument constructor uses
+    public static final int MIN_BLOCKS_PER_STRIPE = 4;             // of HuffmanArchive.DEFAULT_BLOCK_SIZE, see BlockCache(long)
+
+    private final Stripe[] stripes;
+
+    // metrics, counted without locking
+    private final LongAdder hits = new LongAdder();          // block found
+    private final LongAdder misses = new LongAdder();        // block not cached
+    private final LongAdder evictions = new LongAdder();     // blocks dropped to stay within maxBytes
+
+    /**
+     * Where a block comes from: the archive and the file position of the block
+     */
+    private static final class Key {
+        final String archive;
+        final long position;
+
+        Key(String archive, long position){
+            this.archive = archive;
+            this.position = position;
+        }
+
+        public boolean equals(Object o){
+            if (!(o instanceof Key)) { return false; }
+            Key other = (Key) o;
+            return position == other.position && archive.equals(other.archive);
+        }
+
+        public int hashCode(){
+            return 31 * archive.hashCode() + Long.hashCode(position);
+        }
+    }
+
+    /**
+     * One lock's worth of the cache
+     */
+    private static final class Stripe {
+        final long maxBytes;
+        final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);   // access order
+        long bytes;                                                                        // decoded bytes held
+
+        Stripe(long maxBytes){
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Uses as many stripes as leave room for MIN_BLOCKS_PER_STRIPE blocks of HuffmanArchive.DEFAULT_BLOCK_SIZE
+     * each, from 1 up to DEFAULT_STRIPES, so even a small cache keeps default-size blocks
+     * @param maxBytes most decoded bytes to keep
+     */
+    public BlockCache(long maxBytes){
+        this(maxBytes, stripesFor(maxBytes));
+    }
+
+    /**
+     * @return number of stripes for a cache of maxBytes holding default-size blocks
+     */
+    private static int stripesFor(long maxBytes){
+        long stripes = maxBytes / ((long)MIN_BLOCKS_PER_STRIPE * HuffmanArchive.DEFAULT_BLOCK_SIZE);
+        return (int)Math.max(1, Math.min(DEFAULT_STRIPES, stripes));
+    }
+
+    /**
+     * Blocks bigger than maxBytes / stripeCount are never kept, so allow for several blocks per stripe
+     * @param maxBytes most decoded bytes to keep, split evenly between the stripes
+     * @param stripeCount number of independently locked parts, at least the number of busy reader threads
+     */
+    public BlockCache(long maxBytes, int stripeCount){
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int s = 0; s < stripes.length; s++) {
+            stripes[s] = new Stripe(maxBytes / stripes.length);
+        }
+    }
+
+    private Stripe stripe(Key key){
+        int h = key.hashCode();
+        h ^= h >>> 16;          // spread the high bits, the positions of nearby blocks differ little
+        return stripes[Math.floorMod(h, stripes.length)];
+    }
+
+    /**
+     * @param archive name the archive's blocks are cached under
+     * @param position file position of the block
+     * @return the block's original bytes, not a copy and not to be changed, or null if not cached
+     */
+    public byte[] get(String archive, long position){
+        Key key = new Key(archive, position);
+        Stripe stripe = stripe(key);
+        byte[] block;
+        synchronized (stripe) {
+            block = stripe.blocks.get(key);
+        }
+        if (block != null) { hits.increment(); }
+        else { misses.increment(); }
+        return block;
+    }
+
+    /**
+     * Keeps a decoded block, dropping the least recently used blocks of its stripe if needed.
+     * Blocks bigger than a stripe's share of maxBytes are not kept.
+     * @param archive name the archive's blocks are cached under
+     * @param position file position of the block
+     * @param block the block's original bytes, must not be changed afterwards
+     */
+    public void put(String archive, long position, byte[] block){
+        Key key = new Key(archive, position);
+        Stripe stripe = stripe(key);
+        if (block.length > stripe.maxBytes) { return; }
+
+        synchronized (stripe) {
+            byte[] old = stripe.blocks.put(key, block);
+            stripe.bytes += block.length - (old != null ? old.length : 0);
+
+            Iterator<byte[]> eldest = stripe.blocks.values().iterator();
+            while (stripe.bytes > stripe.maxBytes) {
+                stripe.bytes -= eldest.next().length;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    // metrics
+    public long getHits(){return hits.sum();}
+    public long getMisses(){return misses.sum();}
+    public long getEvictions(){return evictions.sum();}
+
+    /**
+     * @return decoded bytes held
+     */
+    public long getBytes(){
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) { bytes += stripe.bytes; }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of blocks held
+     */
+    public int size(){
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) { size += stripe.blocks.size(); }
+        }
+        return size;
+    }
+
+    /**
+     * @return share of lookups that found the block
+     */
+    public double hitRate(){
+        long h = hits.sum();
+        long lookups = h + misses.sum();
+        return lookups == 0 ? 0 : (double)h / lookups;
+    }
+
+    // Override default toString()
+    public String toString(){
+        return String.format("%d blocks, %d bytes, %d hits, %d misses, %d evicted, %.1f%% hit rate",
+                size(), getBytes(), getHits(), getMisses(), getEvictions(), 100 * hitRate());
+    }
+}
@@ -1,25 +1,24 @@
 import java.io.*;
 
 /**
- * Reads bits from a file, one at a time.  
- * Assumes that the last byte of the file contains the number of
- * valid bits in the previous byte.
+ * Reads bits from a file, one at a time.
+ * Assumes that the bits are preceded by their count, an 8 byte long
+ * (see BufferedBitWriter.reserveBitCount), so no look ahead is needed
+ * to find the end.  The file is read in bulk into a buffer.
  * 
  * @author Scot Drysdale
  * @author Chris Bailey-Kellogg, Spring 2016, now returns a boolean instead of an int;
  * 			throws an exception when EOF, with hasNext() method to test before reading (or could try/catch)
  */
 public class BufferedBitReader {
-	// Note that we need to look ahead 3 bytes, because when the
-	// third byte is -1 (EOF indicator) then the second byte is a count
-	// of the number of valid bits in the first byte.
-
 	int current;    // Current byte being returned, bit by bit
-	int next;       // Next byte to be returned (could be a count)
-	int afterNext;  // Byte two after the current byte
-	int bitMask;    // Shows which bit to return
+	int bitMask;    // Shows which bit to return, 0 when current is used up
+	long bitsLeft;  // Number of bits still to return, from the count read by readBitCount
 
-	BufferedInputStream input;
+	InputStream input;
+	byte[] buffer = new byte[1 << 16];   // Bytes read from the file in bulk
+	int bufferPosition;  // Next byte of buffer to return
+	int bufferEnd;       // Number of valid bytes in buffer
 
 	/**
 	 * Constructor
@@ -27,73 +26,71 @@ public class BufferedBitReader {
 	 * @throws IOException
 	 */
 	public BufferedBitReader(String pathName) throws IOException {
-		input = new BufferedInputStream(new FileInputStream(pathName));
-
-		current = input.read();
-		if(current == -1)
-			throw new EOFException("File did not have two bytes");
+		input = new FileInputStream(pathName);
+		bitMask = 0;
+	}
 
-		next = input.read();
-		if(next == -1) 
-			throw new EOFException("File did not have two bytes");	
+	/**
+	 * @return the next byte of the file, or -1 at its end
+	 */
+	private int read() throws IOException {
+		if (bufferPosition == bufferEnd) {
+			bufferPosition = 0;
+			bufferEnd = Math.max(0, input.read(buffer));
+			if (bufferEnd == 0) return -1;
+		}
+		return buffer[bufferPosition++] & 0xFF;
+	}
 
-		afterNext = input.read();
-		bitMask = 128;   // a 1 in leftmost bit position
+	/**
+	 * Reads the number of bits that follow.  Call before the first bit.
+	 * Decode loop: for (long n = reader.readBitCount(); n > 0; n--) { boolean bit = reader.readBit(); }
+	 * 
+	 * @return the number of bits in the file
+	 * @throws IOException
+	 */
+	public long readBitCount() throws IOException {
+		long count = 0;
+		for (int i = 0; i < 8; i++) {
+			int b = read();
+			if (b == -1)
+				throw new EOFException("File did not have a bit count");
+			count = (count << 8) | b;
+		}
+		bitsLeft = count;
+		bitMask = 0;
+		return count;
 	}
 
 	/**
 	 * Test to decide whether or not to read the next bit.
 	 * Input loop: while (reader.hasNext()) { boolean bit = reader.readBit(); }
 	 * 
-	 * @return whether or not there remains a bit to get (else it's end of file, EOF)
+	 * @return whether or not there remains a bit to get (else it's end of the bits)
 	 */
 	public boolean hasNext() {
-		return afterNext != -1 || next != 0;
+		return bitsLeft > 0;
 	}
 
 	/**
 	 * Reads a bit and returns it as a false or a true.
-	 * Throws an exception if there isn't one, so use hasNext() to check first,
-	 * or else catch the EOFException
+	 * Doesn't check the bit count, so only read as many bits as readBitCount returned;
+	 * past them come the padding bits, then an EOFException.
 	 * 
 	 * @return the bit read
 	 * @throws IOException
 	 */
 	public boolean readBit() throws IOException {
-		boolean returnBit;   // Hold the bit to return
-
-		if(afterNext == -1)  // Are we emptying the last byte?
-
-			// When afterNext == -1, next is the count of bits remaining.
-
-			if(next == 0)   // No more bits in the final byte to return
+		if (bitMask == 0) {          // Finished returning this byte?
+			current = read();
+			if (current == -1)
 				throw new EOFException("No more bits");
-			else {
-				if((bitMask & current) == 0)
-					returnBit = false;
-				else 
-					returnBit = true;
-
-				next--;          // One fewer bit to return
-				bitMask = bitMask >> 1;    // Shift to mask next bit
-				return returnBit;
-			}
-		else {
-			if((bitMask & current) == 0)
-				returnBit = false;
-			else 
-				returnBit = true;
-
-			bitMask = bitMask >> 1;    // Shift to mask next bit
-
-			if(bitMask == 0)  {        // Finished returning this byte?
-				bitMask = 128;           // Leftmost bit next
-				current = next;
-				next = afterNext;
-				afterNext = input.read();
-			}
-			return returnBit;
+			bitMask = 128;           // Leftmost bit next
 		}
+		boolean returnBit = (bitMask & current) != 0;
+		bitMask = bitMask >> 1;      // Shift to mask next bit
+		bitsLeft--;
+		return returnBit;
 	}
 
 	/**
@@ -103,7 +100,4 @@ public class BufferedBitReader {
 	public void close() throws IOException {
 		input.close();
 	}
-
-
-
 }
@@ -1,21 +1,20 @@
-import java.io.BufferedInputStream;
 import java.io.EOFException;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 public class BufferedBitReaderEC {
 
-    // Note that we need to look ahead 3 bytes, because when the
-    // third byte is -1 (EOF indicator) then the second byte is a count
-    // of the number of valid bits in the first byte.
+    // The bits are preceded by their count (see BufferedBitWriterEC.reserveBitCount),
+    // so the end is known without looking ahead.
 
     int current;    // Current byte being returned, bit by bit
-    int next;       // Next byte to be returned (could be a count)
-    int afterNext;  // Byte two after the current byte
-    int bitMask;    // Shows which bit to return
-    boolean firstTime = true;
+    int bitMask;    // Shows which bit to return, 0 when current is used up
+    long bitsLeft;  // Number of bits still to return, from the count read by readBitCount
 
-    BufferedInputStream input;
+    MappedInput input;  // the file, mapped so reading is a memory copy
+    long position;      // file position of the next byte to copy into buffer
+    byte[] buffer = new byte[1 << 16];   // bytes copied from the file in bulk
+    int bufferPosition; // next byte of buffer to return
+    int bufferEnd;      // number of valid bytes in buffer
 
     /**
      * Constructor
@@ -23,83 +22,80 @@ public class BufferedBitReaderEC {
      * @throws IOException
      */
     public BufferedBitReaderEC(String pathName) throws IOException {
-        input = new BufferedInputStream(new FileInputStream(pathName));
-        bitMask = 128;   // a 1 in leftmost bit position
+        input = new MappedInput(pathName);
+        bitMask = 0;
+    }
+
+    /**
+     * @return the next byte of the file, or -1 at its end
+     */
+    private int read() throws IOException {
+        if (bufferPosition == bufferEnd) {
+            int n = (int)Math.min(buffer.length, input.length() - position);
+            if (n <= 0) return -1;
+            input.get(position, buffer, 0, n);
+            position += n;
+            bufferPosition = 0;
+            bufferEnd = n;
+        }
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    /**
+     * Reads the number of bits that follow.  Call after the header, before the first bit.
+     * Decode loop: for (long n = reader.readBitCount(); n > 0; n--) { boolean bit = reader.readBit(); }
+     *
+     * @return the number of bits in the file
+     * @throws IOException
+     */
+    public long readBitCount() throws IOException {
+        long count = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = read();
+            if(b == -1)
+                throw new EOFException("File did not have a bit count");
+            count = (count << 8) | b;
+        }
+        bitsLeft = count;
+        bitMask = 0;
+        return count;
     }
 
     /**
      * Test to decide whether or not to read the next bit.
      * Input loop: while (reader.hasNext()) { boolean bit = reader.readBit(); }
      *
-     * @return whether or not there remains a bit to get (else it's end of file, EOF)
+     * @return whether or not there remains a bit to get (else it's the end of the bits)
      */
     public boolean hasNext() {
-        return afterNext != -1 || next != 0;
+        return bitsLeft > 0;
     }
 
     /**
      * Reads a bit and returns it as a false or a true.
-     * Throws an exception if there isn't one, so use hasNext() to check first,
-     * or else catch the EOFException
+     * Doesn't check the bit count, so only read as many bits as readBitCount returned;
+     * past them come the padding bits, then an EOFException.
      *
      * @return the bit read
      * @throws IOException
      */
     public boolean readBit() throws IOException {
-        boolean returnBit;   // Hold the bit to return
-
-        if(firstTime){
-            current = input.read();
+        if(bitMask == 0) {         // Finished returning this byte?
+            current = read();
             if(current == -1)
-                throw new EOFException("File did not have two bytes");
-
-            next = input.read();
-            if(next == -1)
-                throw new EOFException("File did not have two bytes");
-
-            afterNext = input.read();
-
-            firstTime = false;
-        }
-
-        if(afterNext == -1)  // Are we emptying the last byte?
-
-            // When afterNext == -1, next is the count of bits remaining.
-
-            if(next == 0)   // No more bits in the final byte to return
                 throw new EOFException("No more bits");
-            else {
-                if((bitMask & current) == 0)
-                    returnBit = false;
-                else
-                    returnBit = true;
-
-                next--;          // One fewer bit to return
-                bitMask = bitMask >> 1;    // Shift to mask next bit
-                return returnBit;
-            }
-        else {
-            if((bitMask & current) == 0)
-                returnBit = false;
-            else
-                returnBit = true;
-
-            bitMask = bitMask >> 1;    // Shift to mask next bit
-
-            if(bitMask == 0)  {        // Finished returning this byte?
-                bitMask = 128;           // Leftmost bit next
-                current = next;
-                next = afterNext;
-                afterNext = input.read();
-            }
-            return returnBit;
+            bitMask = 128;           // Leftmost bit next
         }
+        boolean returnBit = (bitMask & current) != 0;
+        bitMask = bitMask >> 1;    // Shift to mask next bit
+        bitsLeft--;
+        return returnBit;
     }
 
     public char readCharacter() throws IOException{
-        char c = (char)input.read();
-        if(c == (char)(-1)){throw new EOFException("No more characters.");}
-        return c;
+        int c = read();
+        if(c == -1){throw new EOFException("No more characters.");}
+        return (char)c;
     }
 
     /**
@@ -1,12 +1,11 @@
-import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
 /**
- * Writes bits to a file.  Accumulates bits until gets a byte, 
- * then writes it.  On closing writes an additional byte holding
- * the number of valid bits in the final byte written.
+ * Writes bits to a file.  Accumulates bits until gets a byte,
+ * then writes it.  The bits are preceded by their count, an 8 byte
+ * long left room for by reserveBitCount and filled in on closing.
  * 
  * @author Scot Drysdale
  * @author Chris Bailey-Kellogg, Spring 2016, bits are now boolean
@@ -15,9 +14,11 @@ import java.io.IOException;
 public class BufferedBitWriter {
 	private byte currentByte;     	// The byte that is being filled
 	private byte numBitsWritten;  	// Number of bits written to the current byte
-	public static int maxBytes = 1000000000;  // So can bail out if file gets too big
-	private int totalBytes;			// Exception when exceeds max
-	private BufferedOutputStream output; // The output byte stream
+	public static long maxBytes = Long.MAX_VALUE;  // Set lower to bail out if file gets too big
+	private long totalBytes;		// Exception when exceeds max
+	private ChannelOutput output;	// The output file, written through large direct buffers
+	private long bitCountPosition = -1;	// Where reserveBitCount left room for the count, -1 for none
+	private long bitCount;			// Bits written since reserveBitCount
 
 	/**
 	 * Constructor
@@ -25,10 +26,20 @@ public class BufferedBitWriter {
 	 * @throws FileNotFoundException
 	 */
 	public BufferedBitWriter(String pathName) throws FileNotFoundException {
+		this(pathName, ChannelOutput.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor, with a buffer no bigger than the file needs
+	 * @param pathName the path name of the file to be written
+	 * @param expectedBytes about how many bytes will be written, need not be exact
+	 * @throws FileNotFoundException
+	 */
+	public BufferedBitWriter(String pathName, long expectedBytes) throws FileNotFoundException {
 		currentByte = 0;
 		numBitsWritten = 0;
 		totalBytes = 0;
-		output = new BufferedOutputStream(new FileOutputStream(pathName));
+		output = new ChannelOutput(new FileOutputStream(pathName).getChannel(), ChannelOutput.bufferSizeFor(expectedBytes), 1);
 	}
 
 	/**
@@ -37,6 +48,7 @@ public class BufferedBitWriter {
 	 * @throws IOException
 	 */
 	public void writeBit(boolean bit) throws IOException {
+		bitCount++;
 		numBitsWritten++;
 		currentByte |= (bit?1:0) << (8 - numBitsWritten);
 		if(numBitsWritten == 8) {  // Have we got a full byte?
@@ -49,19 +61,41 @@ public class BufferedBitWriter {
 	}
 
 	/**
-	 * Closes this bitstream.  Writes any partial byte, followed by 
-	 * the number of valid bits in the final byte.
-	 * The file will always have at least 2 bytes.  An file representing
-	 * no bits will have two zero bytes.
-	 * If this is not called the file will not be correctly read by 
+	 * Leaves room for the number of bits written from here on, filled in by close.
+	 * Call before the first bit.
+	 * @throws IOException
+	 */
+	public void reserveBitCount() throws IOException {
+		if (numBitsWritten != 0) throw new IOException("Bit count must start at a whole byte");
+		bitCountPosition = output.getBytesWritten();
+		for (int i = 0; i < 8; i++) {
+			output.write(0);
+		}
+		totalBytes += 8;
+		bitCount = 0;
+	}
+
+	/**
+	 * Closes this bitstream.  Writes any partial byte, padded with 0's,
+	 * and fills in the bit count if one was reserved.
+	 * If this is not called the file will not be correctly read by
 	 *   a BufferedBitReader
-	 *   
+	 *
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		output.write(currentByte);
-		output.write(numBitsWritten);
-
-		output.close();
+		try {
+			if (numBitsWritten > 0) output.write(currentByte);
+			if (bitCountPosition >= 0) {
+				byte[] count = new byte[8];
+				for (int i = 0; i < 8; i++) {
+					count[i] = (byte)(bitCount >>> (56 - 8 * i));
+				}
+				output.writeAt(bitCountPosition, count);
+			}
+		}
+		finally {
+			output.close();
+		}
 	}
 }
@@ -1,4 +1,3 @@
-import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -6,9 +5,11 @@ import java.io.IOException;
 public class BufferedBitWriterEC {
     private byte currentByte;     	// The byte that is being filled
     private byte numBitsWritten;  	// Number of bits written to the current byte
-    public static int maxBytes = 1000000000;  // So can bail out if file gets too big
-    private int totalBytes;			// Exception when exceeds max
-    private BufferedOutputStream output; // The output byte stream
+    public static long maxBytes = Long.MAX_VALUE;  // Set lower to bail out if file gets too big
+    private long totalBytes;		// Exception when exceeds max
+    private ChannelOutput output;   // The output file, written through large direct buffers
+    private long bitCountPosition = -1;  // Where reserveBitCount left room for the count, -1 for none
+    private long bitCount;          // Bits written since reserveBitCount
 
     /**
      * Constructor
@@ -16,10 +17,31 @@ public class BufferedBitWriterEC {
      * @throws FileNotFoundException
      */
     public BufferedBitWriterEC(String pathName) throws FileNotFoundException {
+        this(pathName, ChannelOutput.DEFAULT_BUFFER_SIZE, 1);
+    }
+
+    /**
+     * Constructor, with a buffer no bigger than the file needs
+     * @param pathName the path name of the file to be written
+     * @param expectedBytes about how many bytes will be written, need not be exact
+     * @throws FileNotFoundException
+     */
+    public BufferedBitWriterEC(String pathName, long expectedBytes) throws FileNotFoundException {
+        this(pathName, ChannelOutput.bufferSizeFor(expectedBytes), 1);
+    }
+
+    /**
+     * Constructor
+     * @param pathName the path name of the file to be written
+     * @param bufferSize bytes per output buffer
+     * @param bufferCount buffers filled before writing them all with one gathering write
+     * @throws FileNotFoundException
+     */
+    public BufferedBitWriterEC(String pathName, int bufferSize, int bufferCount) throws FileNotFoundException {
         currentByte = 0;
         numBitsWritten = 0;
         totalBytes = 0;
-        output = new BufferedOutputStream(new FileOutputStream(pathName));
+        output = new ChannelOutput(new FileOutputStream(pathName).getChannel(), bufferSize, bufferCount);
     }
 
     /**
@@ -28,6 +50,7 @@ public class BufferedBitWriterEC {
      * @throws IOException
      */
     public void writeBit(boolean bit) throws IOException {
+        bitCount++;
         numBitsWritten++;
         currentByte |= (bit?1:0) << (8 - numBitsWritten);
         if(numBitsWritten == 8) {  // Have we got a full byte?
@@ -52,19 +75,42 @@ public class BufferedBitWriterEC {
     }
 
     /**
-     * Closes this bitstream.  Writes any partial byte, followed by
-     * the number of valid bits in the final byte.
-     * The file will always have at least 2 bytes.  An file representing
-     * no bits will have two zero bytes.
+     * Leaves room for the number of bits written from here on, an 8 byte long filled in by close,
+     * so a reader knows up front how many bits to read.
+     * Call between whole bytes, i.e. before the first bit.
+     * @throws IOException
+     */
+    public void reserveBitCount() throws IOException {
+        if (numBitsWritten != 0) throw new IOException("Bit count must start at a whole byte");
+        bitCountPosition = output.getBytesWritten();
+        for (int i = 0; i < 8; i++) {
+            output.write(0);
+        }
+        totalBytes += 8;
+        bitCount = 0;
+    }
+
+    /**
+     * Closes this bitstream.  Writes any partial byte, padded with 0's,
+     * and fills in the bit count if one was reserved.
      * If this is not called the file will not be correctly read by
-     *   a BufferedBitReader
+     *   a BufferedBitReaderEC
      *
      * @throws IOException
      */
     public void close() throws IOException {
-        output.write(currentByte);
-        output.write(numBitsWritten);
-
-        output.close();
+        try {
+            if (numBitsWritten > 0) output.write(currentByte);
+            if (bitCountPosition >= 0) {
+                byte[] count = new byte[8];
+                for (int i = 0; i < 8; i++) {
+                    count[i] = (byte)(bitCount >>> (56 - 8 * i));
+                }
+                output.writeAt(bitCountPosition, count);
+            }
+        }
+        finally {
+            output.close();
+        }
     }
 }
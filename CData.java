@@ -5,13 +5,13 @@
 
 public class CData {
     private char character;
-    private int frequency;
+    private long frequency;
 
     /**
      * @param frequency keeps track of frequency of children
      *                  doesn't take a character parameter
      */
-    public CData(int frequency){
+    public CData(long frequency){
         this.frequency = frequency;
     }
 
@@ -20,18 +20,18 @@ public class CData {
      * @param character value of char of node
      * @param frequency number of times character appears in text
      */
-    public CData(char character, int frequency){
+    public CData(char character, long frequency){
         this.character = character;
         this.frequency = frequency;
     }
 
     // setters
     public void setCharacter(char character){this.character = character;}
-    public void setFrequency(int frequency){this.frequency = frequency;}
+    public void setFrequency(long frequency){this.frequency = frequency;}
 
     // getters
     public char getCharacter(){return character;}
-    public int getFrequency(){return frequency;}
+    public long getFrequency(){return frequency;}
 
     // Override default toString()
     public String toString(){
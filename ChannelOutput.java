@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output to a file through large direct buffers, each written with a single FileChannel.write once full.
+ * With more than one buffer, full buffers are held back and written together with one gathering write.
+ * Not safe to share between threads.
+ */
+public class ChannelOutput {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;    // bytes per buffer
+    public static final int MIN_BUFFER_SIZE = 1 << 12;        // smallest buffer bufferSizeFor picks
+
+    private final FileChannel channel;
+    private final ByteBuffer[] buffers;     // filled in order, all written when the last is full
+    private int current;                    // buffer being filled
+    private long bytesWritten;              // bytes given to write so far
+
+    /**
+     * One buffer of DEFAULT_BUFFER_SIZE, no gathering writes
+     * @param channel file to write to, from its current position
+     */
+    public ChannelOutput(FileChannel channel){
+        this(channel, DEFAULT_BUFFER_SIZE, 1);
+    }
+
+    /**
+     * @param channel file to write to, from its current position
+     * @param bufferSize bytes per buffer
+     * @param bufferCount buffers filled before writing, all in one gathering write if more than one
+     */
+    public ChannelOutput(FileChannel channel, int bufferSize, int bufferCount){
+        this.channel = channel;
+        this.buffers = new ByteBuffer[Math.max(1, bufferCount)];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    /**
+     * Buffer size for a file of about a known length: big files get DEFAULT_BUFFER_SIZE, small ones no more
+     * than they need, so writing many small files doesn't allocate a large direct buffer for each
+     * @param expectedBytes about how many bytes will be written, need not be exact
+     * @return bytes per buffer, between MIN_BUFFER_SIZE and DEFAULT_BUFFER_SIZE
+     */
+    public static int bufferSizeFor(long expectedBytes){
+        return (int)Math.max(MIN_BUFFER_SIZE, Math.min(DEFAULT_BUFFER_SIZE, expectedBytes));
+    }
+
+    /**
+     * @return number of bytes given to write so far, buffered or not
+     */
+    public long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    /**
+     * @param b byte to write, the low 8 bits of it
+     * @throws IOException if a full buffer can't be written
+     */
+    public void write(int b) throws IOException {
+        if (!buffers[current].hasRemaining()) { next(); }
+        buffers[current].put((byte)b);
+        bytesWritten++;
+    }
+
+    /**
+     * @param b bytes to write
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @throws IOException if a full buffer can't be written
+     */
+    public void write(byte[] b, int offset, int length) throws IOException {
+        bytesWritten += length;
+        while (length > 0) {
+            if (!buffers[current].hasRemaining()) { next(); }
+            int n = Math.min(length, buffers[current].remaining());
+            buffers[current].put(b, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Moves on to the next buffer, writing them all first if the last one is full
+     */
+    private void next() throws IOException {
+        if (current + 1 < buffers.length) {
+            current++;
+        }
+        else {
+            flush();
+        }
+    }
+
+    /**
+     * Writes every buffered byte to the file
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        for (int i = 0; i <= current; i++) { buffers[i].flip(); }
+        if (current == 0) {
+            while (buffers[0].hasRemaining()) { channel.write(buffers[0]); }
+        }
+        else {
+            // gathering write, repeated until the last buffer is drained
+            while (buffers[current].hasRemaining()) { channel.write(buffers, 0, current + 1); }
+        }
+        for (int i = 0; i <= current; i++) { buffers[i].clear(); }
+        current = 0;
+    }
+
+    /**
+     * Overwrites bytes already given to write, for header fields only known once the rest is written
+     * @param position file position of the first byte
+     * @param b bytes to write there
+     * @throws IOException if writing fails
+     */
+    public void writeAt(long position, byte[] b) throws IOException {
+        flush();
+        ByteBuffer buffer = ByteBuffer.wrap(b);
+        while (buffer.hasRemaining()) { channel.write(buffer, position + buffer.position()); }
+    }
+
+    /**
+     * Writes what is buffered and closes the file
+     * @throws IOException if writing fails
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
@@ -13,11 +13,7 @@ public class ColorComparator implements Comparator<BinaryTree<ImageNodeData>>{
      * @return an int (0 if the frequencies are the same, -1 if b1 has a lower frequency, 1 if b2 has a lower frequency)
      */
     public int compare(BinaryTree<ImageNodeData> b1, BinaryTree<ImageNodeData> b2){
-        // get the difference between both frequencies
-        int difference = b1.getData().getFrequency() - b2.getData().getFrequency();
-
-        if(difference < 0){return -1;}      // if frequency of b1 < frequency of b2
-        else if( difference > 0){return 1;} // if frequency of b2 < frequency of b1
-        else{ return 0;}                    // if their frequencies are equal
+        // compare instead of subtracting, the difference of two large frequencies can overflow
+        return Long.compare(b1.getData().getFrequency(), b2.getData().getFrequency());
     }
 }
@@ -0,0 +1,276 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Random access to the tiles of an image written by ImageCodec. Opening reads the header and tile index,
+ * after which any tile is decoded on its own, reading only its bytes.
+ * The file is read through a MappedInput, so one CompressedImage can be shared by any number of threads.
+ */
+public class CompressedImage {
+    private final MappedInput input;
+    private final int version;
+    private final int width, height;
+    private final int tileWidth, tileHeight;        // size of all tiles but those cut by the right and bottom edges
+    private final int tilesAcross, tilesDown;
+    private final long[] tilePositions;             // where every tile starts, row after row, then where the last ends
+
+    /**
+     * @param pathName file written by ImageCodec
+     * @throws IOException if the file can't be read, or isn't a compressed image of a known version
+     */
+    public CompressedImage(String pathName) throws IOException {
+        input = new MappedInput(pathName);
+        try {
+            ByteBuffer header = ArchiveBlock.read(input, 0, ImageCodec.magic.length + 9);
+            byte[] magic = new byte[ImageCodec.magic.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, ImageCodec.magic)) { throw new IOException(pathName + " is not a compressed image"); }
+            version = header.get() & 0xFF;
+            if (version < 1 || version > ImageCodec.FORMAT_VERSION) { throw new IOException("Unknown compressed image version " + version); }
+            width = header.getInt();
+            height = header.getInt();
+            if (width <= 0 || height <= 0 || (long)width * height > Integer.MAX_VALUE - 8) {
+                throw new IOException("Invalid image size " + width + "x" + height);
+            }
+
+            if (version < 3) {
+                // one tile, the whole image, right after the header
+                tileWidth = width;
+                tileHeight = height;
+                tilePositions = new long[] {header.capacity(), input.length()};
+            }
+            else {
+                ByteBuffer tiles = ArchiveBlock.read(input, header.capacity(), 8);
+                tileWidth = tiles.getInt();
+                tileHeight = tiles.getInt();
+                if (tileWidth <= 0 || tileHeight <= 0) { throw new IOException("Invalid tile size " + tileWidth + "x" + tileHeight); }
+                long tileCount = (long)((width + tileWidth - 1) / tileWidth) * ((height + tileHeight - 1) / tileHeight);
+                if (tileCount >= Integer.MAX_VALUE / 8 || 8 * (tileCount + 1) > input.length()) { throw new IOException("Corrupt tile index"); }
+
+                long indexStart = header.capacity() + 8;
+                ByteBuffer index = ArchiveBlock.read(input, indexStart, (int)(8 * (tileCount + 1)));
+                tilePositions = new long[(int)tileCount + 1];
+                for (int t = 0; t < tilePositions.length; t++) {
+                    tilePositions[t] = index.getLong();
+                    long earliest = t == 0 ? indexStart + index.capacity() : tilePositions[t - 1];
+                    if (tilePositions[t] < earliest || tilePositions[t] > input.length()) { throw new IOException("Corrupt tile index"); }
+                }
+            }
+            tilesAcross = (width + tileWidth - 1) / tileWidth;
+            tilesDown = (height + tileHeight - 1) / tileHeight;
+        }
+        catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    // getters
+    public int getWidth(){return width;}
+    public int getHeight(){return height;}
+    public int getTileWidth(){return tileWidth;}
+    public int getTileHeight(){return tileHeight;}
+    public int getTilesAcross(){return tilesAcross;}
+    public int getTilesDown(){return tilesDown;}
+
+    /**
+     * @param tx column of tiles
+     * @return pixels across the tiles of that column
+     */
+    public int tileWidth(int tx){
+        return Math.min(tileWidth, width - tx * tileWidth);
+    }
+
+    /**
+     * @param ty row of tiles
+     * @return pixels down the tiles of that row
+     */
+    public int tileHeight(int ty){
+        return Math.min(tileHeight, height - ty * tileHeight);
+    }
+
+    /**
+     * Decodes one tile. Tiles are independent, so any number of threads may decode at once.
+     * @param tx column of tiles, from 0 to getTilesAcross() - 1
+     * @param ty row of tiles, from 0 to getTilesDown() - 1
+     * @return the tile's ARGB pixels, row after row, tileWidth(tx) per row
+     * @throws IOException if the tile can't be read or isn't valid
+     */
+    public int[] decodeTile(int tx, int ty) throws IOException {
+        if (tx < 0 || tx >= tilesAcross || ty < 0 || ty >= tilesDown) {
+            throw new IndexOutOfBoundsException("No tile " + tx + "," + ty);
+        }
+        int t = ty * tilesAcross + tx;
+        long length = tilePositions[t + 1] - tilePositions[t];
+        if (length > Integer.MAX_VALUE - 8) { throw new IOException("Tile too big to read"); }
+        byte[] data = new byte[(int)length];
+        input.get(tilePositions[t], data, 0, data.length);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        int w = tileWidth(tx), h = tileHeight(ty);
+        int[] pixels = new int[w * h];
+        byte[] plane = new byte[w * h];
+        byte[] filters = new byte[version >= 2 ? h : 0];
+        HuffmanTable table = new HuffmanTable();
+        BitArrayReader bits = new BitArrayReader();
+
+        try {
+            for (int shift : ImageCodec.planeShifts) {
+                int kind = buffer.get() & 0xFF;
+                if (kind == ImageCodec.CONSTANT) {
+                    int value = (buffer.get() & 0xFF) << shift;
+                    for (int i = 0; i < pixels.length; i++) { pixels[i] |= value; }
+                    continue;
+                }
+                if (kind != ImageCodec.CODED) { throw new IOException("Invalid plane in compressed image"); }
+                buffer.get(filters);
+                buffer.position(table.readLengths(data, buffer.position(), data.length));
+
+                int codeBytes = buffer.getInt();
+                if (codeBytes < 0 || codeBytes > buffer.remaining()) { throw new IOException("Plane codes cut short"); }
+                bits.reset(data, buffer.position(), buffer.position() + codeBytes);
+                buffer.position(buffer.position() + codeBytes);
+                table.decode(bits, plane, 0, plane.length);
+                if (bits.overrun()) { throw new IOException("Plane codes cut short"); }
+
+                for (int y = 0; y < filters.length; y++) {
+                    if ((filters[y] & 0xFF) >= RowFilter.TYPES) { throw new IOException("Invalid row filter"); }
+                    RowFilter.unfilterRow(filters[y], plane, w, y);
+                }
+                for (int i = 0; i < pixels.length; i++) { pixels[i] |= (plane[i] & 0xFF) << shift; }
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Tile cut short");
+        }
+        return pixels;
+    }
+
+    /**
+     * Decodes the tiles a region touches, in parallel, and copies the region out of them
+     * @param x column of the region's top left pixel
+     * @param y row of the region's top left pixel
+     * @param w pixels across the region
+     * @param h pixels down the region
+     * @param threads most tiles decoded at the same time
+     * @return the region, TYPE_INT_ARGB
+     * @throws IOException if a tile can't be read or isn't valid
+     */
+    public BufferedImage readRegion(int x, int y, int w, int h, int threads) throws IOException {
+        if (x < 0 || y < 0 || w <= 0 || h <= 0 || (long)x + w > width || (long)y + h > height) {
+            throw new IllegalArgumentException("Region " + w + "x" + h + " at " + x + "," + y + " is not inside the image");
+        }
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+
+        // every tile fills its own part of the result
+        decodeTiles(x, y, w, h, threads, (tx, ty, tile) -> copyTile(tile, tx, ty, pixels, x, y, w, h));
+        return result;
+    }
+
+    /**
+     * Decodes the whole image straight into an uncompressed file, tiles in parallel, without ever holding
+     * the whole image in memory
+     * @param pathName file to write, replaced if it exists
+     * @param format RawImage.RGBA or RawImage.PPM
+     * @param threads most tiles decoded at the same time
+     * @throws IOException if a tile can't be read or isn't valid, or the file can't be written
+     */
+    public void writeRaw(String pathName, int format, int threads) throws IOException {
+        RawImage raw = new RawImage(pathName, format, width, height);
+        try {
+            decodeTiles(0, 0, width, height, threads, (tx, ty, tile) -> {
+                for (int row = 0; row < tileHeight(ty); row++) {
+                    raw.putPixels(tx * tileWidth, ty * tileHeight + row, tile, row * tileWidth(tx), tileWidth(tx));
+                }
+            });
+        }
+        finally {
+            raw.close();
+        }
+    }
+
+    /**
+     * What to do with a decoded tile
+     */
+    private interface TileConsumer {
+        void accept(int tx, int ty, int[] tile) throws IOException;
+    }
+
+    /**
+     * Decodes every tile a region touches on a pool of threads, and hands each to consumer on the thread
+     * that decoded it
+     * @param x column of the region's top left pixel
+     * @param y row of the region's top left pixel
+     * @param w pixels across the region
+     * @param h pixels down the region
+     * @param threads most tiles decoded at the same time
+     * @param consumer called once per tile, from several threads at once
+     * @throws IOException if a tile can't be read or isn't valid, or consumer fails
+     */
+    private void decodeTiles(int x, int y, int w, int h, int threads, TileConsumer consumer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> decoded = new ArrayList<>();
+            for (int ty = y / tileHeight; ty <= (y + h - 1) / tileHeight; ty++) {
+                for (int tx = x / tileWidth; tx <= (x + w - 1) / tileWidth; tx++) {
+                    int tileX = tx, tileY = ty;
+                    decoded.add(executor.submit(() -> {
+                        consumer.accept(tileX, tileY, decodeTile(tileX, tileY));
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> tile : decoded) { tile.get(); }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding tiles");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) { throw (IOException) e.getCause(); }
+            throw new IOException("Cannot decode tile: " + e.getCause().getMessage(), e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Copies the part of a decoded tile that lies in a region
+     * @param tile the tile's pixels, from decodeTile
+     * @param tx column of tiles
+     * @param ty row of tiles
+     * @param region the region's pixels, row after row, w per row
+     * @param x column of the region's top left pixel
+     * @param y row of the region's top left pixel
+     * @param w pixels across the region
+     * @param h pixels down the region
+     */
+    private void copyTile(int[] tile, int tx, int ty, int[] region, int x, int y, int w, int h){
+        int left = tx * tileWidth, top = ty * tileHeight;
+        int fromX = Math.max(x, left), toX = Math.min(x + w, left + tileWidth(tx));
+        int fromY = Math.max(y, top), toY = Math.min(y + h, top + tileHeight(ty));
+        for (int row = fromY; row < toY; row++) {
+            System.arraycopy(tile, (row - top) * tileWidth(tx) + fromX - left, region, (row - y) * w + fromX - x, toX - fromX);
+        }
+    }
+
+    /**
+     * Closes the file
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        input.close();
+    }
+}
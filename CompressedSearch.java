@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds a pattern in a HuffmanArchive without decompressing it.
+ * The pattern is encoded with every block's code table and compared with the bitstream right at the start
+ * of every code. The decode table is only used to step from one code to the next, no bytes are written out.
+ * Since the codes are a prefix code, equal bits at a code boundary can only be the pattern's bytes.
+ * Blocks have codes of their own, so a match across a block boundary is found on the decoded bytes instead,
+ * from the last pattern.length - 1 bytes of one block and the first of the next.
+ */
+public class CompressedSearch {
+
+    /**
+     * @param archivePath archive written by HuffmanArchive
+     * @param pattern text to look for
+     * @param withLines whether to also decode the line every match starts in
+     * @return all matches, in order
+     * @throws IOException if the archive can't be read or is corrupt
+     */
+    public static List<SearchMatch> search(String archivePath, String pattern, boolean withLines) throws IOException {
+        ArchiveReader reader = new ArchiveReader(archivePath);
+        try {
+            return search(reader, pattern.getBytes(Charset.defaultCharset()), withLines);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param reader open archive
+     * @param pattern bytes to look for, at least one
+     * @param withLines whether to also decode the line every match starts in
+     * @return all matches, in order
+     * @throws IOException if the archive can't be read or is corrupt
+     */
+    public static List<SearchMatch> search(ArchiveReader reader, byte[] pattern, boolean withLines) throws IOException {
+        if (pattern.length == 0) { throw new IllegalArgumentException("Empty pattern"); }
+        List<SearchMatch> matches = new ArrayList<>();
+        BitArrayReader stream = new BitArrayReader();
+        BitArrayReader candidate = new BitArrayReader();
+        BitArrayReader expected = new BitArrayReader();
+        BitArrayWriter patternWriter = new BitArrayWriter();
+        byte[] patternCodes = new byte[(pattern.length * HuffmanTable.MAX_CODE_LENGTH + 7) / 8];
+
+        // a match can start in the last pattern.length - 1 bytes before a block and end inside it,
+        // so those bytes are carried from block to block, followed by the block's first bytes
+        int keep = pattern.length - 1;
+        byte[] window = new byte[2 * keep];    // carried bytes, then the next block's first bytes
+        long[] windowRecords = new long[keep]; // record every carried byte is in
+        int carried = 0;                       // number of carried bytes
+
+        long blockStart = 0;                  // position of the block's first byte in the original file
+        for (int b = 0; b < reader.getBlockCount(); b++) {
+            ArchiveBlock block = reader.getBlock(b);
+            HuffmanTable table = block.getTable();
+            int rawLength = block.getRawLength();
+            byte[] payload = null;
+
+            // matches that start in the carried bytes and end in this block
+            if (carried > 0 && rawLength > 0) {
+                payload = block.readPayload(reader.getInput());
+                int headLength = Math.min(keep, rawLength);
+                stream.reset(payload, 0, payload.length);
+                table.decode(stream, window, carried, headLength);
+                for (int s = 0; s < carried && s + pattern.length <= carried + headLength; s++) {
+                    if (Arrays.equals(window, s, s + pattern.length, pattern, 0, pattern.length)) {
+                        matches.add(new SearchMatch(blockStart - carried + s, windowRecords[s],
+                                withLines ? reader.readRecord(windowRecords[s]) : null));
+                    }
+                }
+            }
+
+            // the pattern can't be in a block without a code for each of its bytes
+            long patternBits = 0;
+            boolean coded = true;
+            for (byte p : pattern) {
+                coded &= table.getLength(p & 0xFF) > 0;
+                patternBits += table.getLength(p & 0xFF);
+            }
+            if (!coded || pattern.length > rawLength) {
+                carried = carry(reader, block, pattern, window, windowRecords, carried);
+                blockStart += rawLength;
+                continue;
+            }
+            patternWriter.reset(patternCodes, 0);
+            table.encode(patternWriter, pattern, 0, pattern.length);
+            patternWriter.flush();
+            int firstLength = (int)Math.min(32, patternBits);
+            expected.reset(patternCodes, 0, patternCodes.length);
+            int first = expected.readBits(firstLength);
+
+            if (payload == null) { payload = block.readPayload(reader.getInput()); }
+            stream.reset(payload, 0, payload.length);
+            for (int i = 0, last = rawLength - pattern.length; i <= last; i++) {
+                // cheap test of the first bits, then the whole pattern
+                stream.refill();
+                if (stream.peekBits(firstLength) == first
+                        && (patternBits <= 32 || matchesAt(candidate, payload, stream.bitPosition(), expected, patternCodes, patternBits))) {
+                    long record = block.getFirstRecord() + block.recordOf(i);
+                    matches.add(new SearchMatch(blockStart + i, record, withLines ? reader.readRecord(record) : null));
+                }
+                // move to the next code
+                table.decodeSymbol(stream);
+            }
+            // the scan stops right before the last pattern.length - 1 bytes, the ones to carry
+            table.decode(stream, window, 0, keep);
+            for (int k = 0; k < keep; k++) {
+                windowRecords[k] = block.getFirstRecord() + block.recordOf(rawLength - keep + k);
+            }
+            carried = keep;
+            if (stream.overrun()) { throw new IOException("Corrupt block " + b); }
+            blockStart += rawLength;
+        }
+        return matches;
+    }
+
+    /**
+     * Carries the last bytes before the next block past a block the pattern can't be in by itself
+     * @param block the block, after the carried bytes
+     * @param window carried bytes, replaced by those before the next block
+     * @param windowRecords record of every carried byte, updated with them
+     * @param carried number of carried bytes
+     * @return number of bytes carried to the next block
+     * @throws IOException if the block is corrupt
+     */
+    private static int carry(ArchiveReader reader, ArchiveBlock block, byte[] pattern,
+                             byte[] window, long[] windowRecords, int carried) throws IOException {
+        int keep = pattern.length - 1;
+        int rawLength = block.getRawLength();
+        // the bytes still carried, if the block is shorter than what is kept, then the block's last ones
+        int still = Math.max(0, Math.min(carried, keep - rawLength));
+        // no match can start in a block without a code for the pattern's first byte,
+        // but one can still start before it and run through it
+        if (keep == 0 || (still == 0 && block.getTable().getLength(pattern[0] & 0xFF) == 0)) { return 0; }
+        byte[] bytes = block.decodeAll(reader.getInput());
+
+        System.arraycopy(window, carried - still, window, 0, still);
+        System.arraycopy(windowRecords, carried - still, windowRecords, 0, still);
+        int from = rawLength - (Math.min(keep, still + rawLength) - still);
+        for (int i = from, k = still; i < rawLength; i++, k++) {
+            window[k] = bytes[i];
+            windowRecords[k] = block.getFirstRecord() + block.recordOf(i);
+        }
+        return still + rawLength - from;
+    }
+
+    /**
+     * @return whether the bits at bitOffset are the pattern's codes
+     */
+    private static boolean matchesAt(BitArrayReader candidate, byte[] payload, long bitOffset,
+                                     BitArrayReader expected, byte[] patternCodes, long patternBits){
+        candidate.reset(payload, 0, payload.length);
+        candidate.seek(bitOffset);
+        expected.reset(patternCodes, 0, patternCodes.length);
+        for (long left = patternBits; left > 0; left -= 32) {
+            int length = (int)Math.min(32, left);
+            if (candidate.readBits(length) != expected.readBits(length)) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Usage: java CompressedSearch archive pattern [-lines]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java CompressedSearch archive pattern [-lines]");
+            return;
+        }
+        boolean withLines = args.length > 2 && args[2].equals("-lines");
+        for (SearchMatch match : search(args[0], args[1], withLines)) {
+            System.out.println(match);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 64 bit XXH64 hash of a byte stream, fast enough to run over every file of a batch before compressing it.
+ * Feed it with update as the bytes come in, then read getValue.
+ */
+public class ContentHash {
+    private static final long prime1 = 0x9E3779B185EBCA87L;
+    private static final long prime2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long prime3 = 0x165667B19E3779F9L;
+    private static final long prime4 = 0x85EBCA77C2B2AE63L;
+    private static final long prime5 = 0x27D4EB2F165667C5L;
+
+    private long v1 = prime1 + prime2;     // four lanes, each taking every fourth 8 byte word
+    private long v2 = prime2;
+    private long v3 = 0;
+    private long v4 = -prime1;
+    private long totalLength;              // bytes hashed so far
+    private final byte[] stripe = new byte[32];  // bytes not yet making a full 32 byte stripe
+    private int stripeLength;
+
+    /**
+     * @param input bytes to add to the hash
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void update(byte[] input, int offset, int length){
+        totalLength += length;
+
+        // finish a stripe started by the previous call
+        if (stripeLength > 0) {
+            int n = Math.min(length, 32 - stripeLength);
+            System.arraycopy(input, offset, stripe, stripeLength, n);
+            stripeLength += n;
+            offset += n;
+            length -= n;
+            if (stripeLength < 32) { return; }
+            consume(stripe, 0);
+            stripeLength = 0;
+        }
+
+        // whole stripes straight from the input, the rest waits for more
+        int end = offset + length;
+        for (; offset + 32 <= end; offset += 32) {
+            consume(input, offset);
+        }
+        stripeLength = end - offset;
+        System.arraycopy(input, offset, stripe, 0, stripeLength);
+    }
+
+    private void consume(byte[] input, int offset){
+        v1 = round(v1, readLong(input, offset));
+        v2 = round(v2, readLong(input, offset + 8));
+        v3 = round(v3, readLong(input, offset + 16));
+        v4 = round(v4, readLong(input, offset + 24));
+    }
+
+    /**
+     * @return the hash of all bytes given to update
+     */
+    public long getValue(){
+        long h;
+        if (totalLength >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        }
+        else {
+            h = prime5;
+        }
+        h += totalLength;
+
+        // bytes after the last full stripe
+        int i = 0;
+        for (; i + 8 <= stripeLength; i += 8) {
+            h ^= round(0, readLong(stripe, i));
+            h = Long.rotateLeft(h, 27) * prime1 + prime4;
+        }
+        if (i + 4 <= stripeLength) {
+            h ^= (readInt(stripe, i) & 0xFFFFFFFFL) * prime1;
+            h = Long.rotateLeft(h, 23) * prime2 + prime3;
+            i += 4;
+        }
+        for (; i < stripeLength; i++) {
+            h ^= (stripe[i] & 0xFF) * prime5;
+            h = Long.rotateLeft(h, 11) * prime1;
+        }
+
+        // mix the bits
+        h ^= h >>> 33;
+        h *= prime2;
+        h ^= h >>> 29;
+        h *= prime3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input){
+        acc += input * prime2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * prime1;
+    }
+
+    private static long mergeRound(long acc, long value){
+        acc ^= round(0, value);
+        return acc * prime1 + prime4;
+    }
+
+    private static long readLong(byte[] b, int i){
+        return (readInt(b, i) & 0xFFFFFFFFL) | ((long)readInt(b, i + 4) << 32);
+    }
+
+    private static int readInt(byte[] b, int i){
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * @param fileName file to hash
+     * @return hash of the whole file
+     * @throws IOException if the file can't be read
+     */
+    public static long hashFile(String fileName) throws IOException {
+        ContentHash hash = new ContentHash();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(fileName)) {
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                hash.update(buffer, 0, n);
+            }
+        }
+        return hash.getValue();
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compressed files kept by the hash and length of their original content, so a batch can copy the
+ * compressed form of a file it has seen before instead of compressing it again.
+ *
+ * The cache is a folder with a copy of every compressed file and an index listing them from least to most
+ * recently used. When the copies add up to more than maxBytes the least recently used ones are deleted.
+ * The index is only written by save; copies not in it are ignored and overwritten.
+ * Contents are told apart by their 64 bit ContentHash and length only, they are never compared byte by byte.
+ * Safe to share between threads.
+ */
+public class DedupCache {
+    public static final String INDEX_FILE = "index.txt";
+    private static final String indexHeader = "dedup 1";        // first line of the index, with its version
+    private static final String artifactSuffix = ".huf";
+
+    private final File directory;                                // folder with the copies and the index
+    private final long maxBytes;                                 // most bytes of copies kept
+    private final LinkedHashMap<String, Long> sizes;             // size of the copy for each key, least recently used first
+    private long totalBytes;                                     // sum of sizes
+
+    // metrics
+    private long hits;                                           // copy restored
+    private long misses;                                         // no copy of the content
+    private long evictions;                                      // copies deleted to stay within maxBytes
+
+    /**
+     * Opens a cache folder, creating it if needed, and reads its index
+     * @param directory folder for the cache
+     * @param maxBytes most bytes of compressed copies to keep
+     * @throws IOException if the folder can't be created or the index can't be read
+     */
+    public DedupCache(String directory, long maxBytes) throws IOException {
+        this.directory = new File(directory);
+        this.maxBytes = maxBytes;
+        this.sizes = new LinkedHashMap<>(16, 0.75f, true);     // access order
+        Files.createDirectories(this.directory.toPath());
+
+        File index = new File(this.directory, INDEX_FILE);
+        if (!index.exists()) { return; }
+        try (BufferedReader input = new BufferedReader(new FileReader(index))) {
+            String line = input.readLine();
+            if (!indexHeader.equals(line)) { throw new IOException(index + " is not a dedup index"); }
+            while ((line = input.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length != 2) { throw new IOException("Bad line in " + index + ": " + line); }
+                // skip entries whose copy was deleted or changed since
+                long size = Long.parseLong(fields[1]);
+                if (artifact(fields[0]).length() == size) {
+                    sizes.put(fields[0], size);
+                    totalBytes += size;
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @param hash ContentHash of the original file
+     * @param length length of the original file
+     * @return name the compressed copy is kept under
+     */
+    private static String key(long hash, long length){
+        return Long.toHexString(hash) + "_" + length;
+    }
+
+    private File artifact(String key){
+        return new File(directory, key + artifactSuffix);
+    }
+
+    /**
+     * Copies the compressed form of a content to a file, if the cache has it
+     * @param hash ContentHash of the original file
+     * @param length length of the original file
+     * @param target where to write the compressed file
+     * @return whether target was written
+     * @throws IOException if the copy can't be written
+     */
+    public boolean restore(long hash, long length, String target) throws IOException {
+        String key = key(hash, length);
+        synchronized (this) {
+            if (sizes.get(key) == null) {
+                misses++;
+                return false;
+            }
+        }
+
+        // copy outside the lock, other threads may evict it meanwhile
+        try {
+            Files.copy(artifact(key).toPath(), Paths.get(target), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (NoSuchFileException e) {
+            synchronized (this) { misses++; }
+            return false;
+        }
+        synchronized (this) { hits++; }
+        return true;
+    }
+
+    /**
+     * Keeps a copy of a compressed file for its original content, evicting older copies if needed.
+     * Copies bigger than maxBytes on their own are not kept.
+     * @param hash ContentHash of the original file
+     * @param length length of the original file
+     * @param compressed the compressed file
+     * @throws IOException if the copy can't be written
+     */
+    public void store(long hash, long length, String compressed) throws IOException {
+        String key = key(hash, length);
+        long size = new File(compressed).length();
+        if (size > maxBytes) { return; }
+        synchronized (this) {
+            if (sizes.containsKey(key)) { return; }
+        }
+
+        // copy under a name of its own first, so no thread ever reads a partial copy
+        Path temporary = Files.createTempFile(directory.toPath(), key, ".tmp");
+        try {
+            Files.copy(Paths.get(compressed), temporary, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                if (sizes.containsKey(key)) { return; }         // stored by another thread meanwhile
+                Files.move(temporary, artifact(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                sizes.put(key, size);
+                totalBytes += size;
+                evict();
+            }
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Deletes least recently used copies until the rest fit in maxBytes
+     */
+    private synchronized void evict(){
+        Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            artifact(entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Writes the index, so the copies can be found by later runs
+     * @throws IOException if the index can't be written
+     */
+    public synchronized void save() throws IOException {
+        // replace the old index only once the new one is complete
+        File temporary = new File(directory, INDEX_FILE + ".tmp");
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(temporary))) {
+            output.write(indexHeader);
+            output.newLine();
+            for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+                output.write(entry.getKey() + " " + entry.getValue());
+                output.newLine();
+            }
+        }
+        Files.move(temporary.toPath(), new File(directory, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // getters
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+
+    public synchronized long getTotalBytes(){
+        return totalBytes;
+    }
+
+    public synchronized int size(){
+        return sizes.size();
+    }
+
+    /**
+     * @return share of lookups that restored a copy, 0 if there were none
+     */
+    public synchronized double hitRate(){
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    // Override default toString()
+    public synchronized String toString(){
+        return String.format("%d files, %d bytes, %d hits, %d misses, %d evicted, %.1f%% hit rate",
+                sizes.size(), totalBytes, hits, misses, evictions, 100 * hitRate());
+    }
+}
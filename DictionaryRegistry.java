@@ -0,0 +1,59 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionaries by id, for decoders to resolve the ids in compressed data.
+ * Dictionaries are loaded from a folder the first time their id is asked for and kept from then on.
+ * Safe to share between threads.
+ */
+public class DictionaryRegistry {
+    private final String directory;                       // where dictionary_<id>.hdic files are, null for none
+    private final ConcurrentHashMap<Integer, HuffmanDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    /**
+     * A registry only holding dictionaries that are added to it
+     */
+    public DictionaryRegistry(){
+        this(null);
+    }
+
+    /**
+     * @param directory folder with dictionary files, named by fileName(id)
+     */
+    public DictionaryRegistry(String directory){
+        this.directory = directory;
+    }
+
+    /**
+     * @param id dictionary id
+     * @return name of the file a dictionary is looked for in
+     */
+    public static String fileName(int id){
+        return "dictionary_" + id + ".hdic";
+    }
+
+    /**
+     * @param dictionary dictionary to hand out for its id, replacing any loaded before
+     */
+    public void add(HuffmanDictionary dictionary){
+        dictionaries.put(dictionary.getId(), dictionary);
+    }
+
+    /**
+     * @param id dictionary id from compressed data
+     * @return the dictionary
+     * @throws IOException if it isn't loaded yet and can't be loaded, or the file holds another id
+     */
+    public HuffmanDictionary get(int id) throws IOException {
+        HuffmanDictionary dictionary = dictionaries.get(id);
+        if (dictionary != null) { return dictionary; }
+        if (directory == null) { throw new IOException("Unknown dictionary " + id); }
+
+        // two threads may load it at once, both get the one that made it into the map
+        dictionary = HuffmanDictionary.load(new File(directory, fileName(id)).getPath());
+        if (dictionary.getId() != id) { throw new IOException(fileName(id) + " holds dictionary " + dictionary.getId()); }
+        HuffmanDictionary previous = dictionaries.putIfAbsent(id, dictionary);
+        return previous != null ? previous : dictionary;
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Byte frequencies that can be saved, loaded and added together, so workers can count their own shard
+ * of the input and a coordinator can sum the counts into one code for all of them.
+ *
+ * File layout: "HHST", format version byte, then the 256 counts as longs
+ */
+public class Histogram {
+    public static final int FORMAT_VERSION = 1;          // bumped when the file layout changes
+    public static final String EXTENSION = ".hist";      // what mergeDirectory looks for
+    private static final byte[] magic = {'H', 'H', 'S', 'T'};
+
+    private final long[] counts = new long[HuffmanTable.SYMBOLS];
+
+    /**
+     * @return number of times each byte value was counted, not a copy
+     */
+    public long[] getCounts(){
+        return counts;
+    }
+
+    /**
+     * @return number of bytes counted
+     */
+    public long total(){
+        long total = 0;
+        for (long count : counts) { total += count; }
+        return total;
+    }
+
+    /**
+     * @param data bytes to count
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void add(byte[] data, int offset, int length){
+        for (int i = offset, end = offset + length; i < end; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+    }
+
+    /**
+     * @param fileName file whose bytes to count
+     * @throws IOException if the file can't be read
+     */
+    public void addFile(String fileName) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(fileName)) {
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                add(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * @param other counts to add to these
+     */
+    public void merge(Histogram other){
+        for (int s = 0; s < counts.length; s++) {
+            counts[s] += other.counts[s];
+        }
+    }
+
+    /**
+     * Builds a dictionary for the counted bytes. Every byte value gets a code, also ones never counted.
+     * @param id number for the dictionary
+     * @return the dictionary
+     */
+    public HuffmanDictionary toDictionary(int id){
+        long[] histogram = Arrays.copyOf(counts, counts.length);
+        for (int s = 0; s < histogram.length; s++) { histogram[s]++; }
+
+        HuffmanTable table = new HuffmanTable();
+        table.build(histogram);
+        return new HuffmanDictionary(id, table);
+    }
+
+    /**
+     * @param pathName where to write the histogram
+     * @throws IOException if the file can't be written
+     */
+    public void save(String pathName) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pathName)))) {
+            output.write(magic);
+            output.writeByte(FORMAT_VERSION);
+            for (long count : counts) { output.writeLong(count); }
+        }
+    }
+
+    /**
+     * @param pathName histogram file written by save
+     * @return the histogram
+     * @throws IOException if the file can't be read, or isn't a histogram of a known version
+     */
+    public static Histogram load(String pathName) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(pathName)))) {
+            byte[] header = new byte[magic.length];
+            input.readFully(header);
+            if (!Arrays.equals(header, magic)) { throw new IOException(pathName + " is not a histogram"); }
+            int version = input.readUnsignedByte();
+            if (version != FORMAT_VERSION) { throw new IOException("Unknown histogram version " + version); }
+
+            Histogram histogram = new Histogram();
+            for (int s = 0; s < histogram.counts.length; s++) { histogram.counts[s] = input.readLong(); }
+            return histogram;
+        }
+    }
+
+    /**
+     * @param directory shared folder the workers saved their histograms in
+     * @return the sum of every .hist file in the folder
+     * @throws IOException if the folder or one of the histograms can't be read
+     */
+    public static Histogram mergeDirectory(String directory) throws IOException {
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) { throw new IOException("Cannot open directory " + directory); }
+
+        Histogram sum = new Histogram();
+        for (File f : files) {
+            sum.merge(load(f.getPath()));
+        }
+        return sum;
+    }
+
+    // Override default toString()
+    public String toString(){
+        return total() + " bytes";
+    }
+}
@@ -20,9 +20,9 @@ public class Huffman {
      * @return a map with all characters in the text(keys) and their corresponding frequency(value)
      */
 
-    public static Map<Character, Integer> frequencyTable(String fileName){
+    public static Map<Character, Long> frequencyTable(String fileName){
         // create a map to be returned with all characters and their frequency
-        Map<Character, Integer> characterFrequencies = new HashMap<>();
+        Map<Character, Long> characterFrequencies = new HashMap<>();
         BufferedReader input;
 
         // Open the file, if possible
@@ -45,7 +45,7 @@ public class Huffman {
                 }
                 // else create a new key for the character with value 1
                 else {
-                    characterFrequencies.put((char)c, 1);
+                    characterFrequencies.put((char)c, 1L);
                 }
             }
         }
@@ -83,7 +83,7 @@ public class Huffman {
         if(!frequencyTable.isEmpty()){
             for(Object c: frequencyTable.keySet()){
                 // create a new node with character and frequency given by the map
-                CData d = new CData((char) c, (int)frequencyTable.get(c));
+                CData d = new CData((char) c, (long)frequencyTable.get(c));
                 BinaryTree<CData> b = new BinaryTree<>(d);
                 // add tree (node) to the queue
                 queue.add(b);
@@ -219,7 +219,8 @@ public class Huffman {
 
         // Open the output file, if possible
         try {
-            output = new BufferedBitWriter(compressedPathName);
+            // the bit count, then codes that rarely take more room than the text itself
+            output = new BufferedBitWriter(compressedPathName, 8 + new File(fileName).length());
         }
         catch (IOException e) {
             System.err.println("Cannot open file.\n" + e.getMessage());
@@ -228,6 +229,9 @@ public class Huffman {
 
         // go over input file and write over output file
         try{
+            // number of code bits, filled in once they are all written
+            output.reserveBitCount();
+
             // Character by character
             int c;
             // as long as there are characters to read
@@ -325,7 +329,8 @@ public class Huffman {
             // start at head of binary tree
             BinaryTree<CData> t = huffmanTree;
 
-            while (input.hasNext()) {
+            // as many bits as the file says, no end of file checks
+            for (long bits = input.readBitCount(); bits > 0; bits--) {
                 boolean bit = input.readBit();                     // read bit
                 // have not yet gotten to the end of the character code
                 if (!t.isLeaf()) {
@@ -0,0 +1,188 @@
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Compressed archive of a line oriented file where every line (record) can be decoded on its own.
+ *
+ * File layout, numbers big-endian:
+ *   header:  "HFAR", format version byte, 3 reserved bytes, original length (long), record count (long),
+ *            block count (int), reserved int
+ *   blocks, one after the other:
+ *            size of the rest of the block (int), table mode (byte), record count (int), original length (int),
+ *            CRC-32 of the original bytes (int), index size (int),
+ *            for TABLE_INLINE the code lengths (see HuffmanTable.writeLengths),
+ *            index: length and number of code bits of every record as VarInts,
+ *            codes of all records one after the other, the last byte padded with 0's
+ */
+public class HuffmanArchive {
+    public static final int FORMAT_VERSION = 1;             // bumped when the file layout changes
+    public static final int HEADER_SIZE = 32;               // bytes of the file header
+    public static final int BLOCK_HEADER_SIZE = 21;         // bytes of a block's fixed fields
+    public static final int TABLE_INLINE = 0;               // block stores its code lengths
+    public static final int TABLE_PREVIOUS = 1;             // block uses the table of the block before
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;   // original bytes per block
+    static final byte[] magic = {'H', 'F', 'A', 'R'};
+
+    /**
+     * @param fileName file to compress, one record per line
+     * @param archivePath where to write the archive
+     * @throws IOException if reading or writing fails
+     */
+    public static void compress(String fileName, String archivePath) throws IOException {
+        ArchiveWriter output = new ArchiveWriter(archivePath, DEFAULT_BLOCK_SIZE);
+        try (InputStream input = new FileInputStream(fileName)) {
+            output.writeLines(input);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Adds lines at the end of an archive, in new blocks, without touching the blocks already there
+     * @param archivePath archive written by HuffmanArchive
+     * @param newData bytes to add, one record per line
+     * @throws IOException if the archive can't be read or written
+     */
+    public static void append(String archivePath, byte[] newData) throws IOException {
+        append(archivePath, new ByteArrayInputStream(newData));
+    }
+
+    /**
+     * Adds the lines of a stream at the end of an archive, see ArchiveWriter.append
+     * @param archivePath archive written by HuffmanArchive
+     * @param input stream to read up to its end, one record per line
+     * @throws IOException if reading or writing fails
+     */
+    public static void append(String archivePath, InputStream input) throws IOException {
+        ArchiveWriter output = ArchiveWriter.append(archivePath, DEFAULT_BLOCK_SIZE);
+        try {
+            output.writeLines(input);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * The output file is sized from the original length in the archive header and written through
+     * memory mappings, one block at a time
+     * @param archivePath archive to decompress
+     * @param fileName where to write the original file
+     * @throws IOException if reading or writing fails, or the archive is corrupt
+     */
+    public static void decompress(String archivePath, String fileName) throws IOException {
+        ArchiveReader input = new ArchiveReader(archivePath);
+        try {
+            MappedOutput output = new MappedOutput(fileName, input.getOriginalLength());
+            try {
+                long position = 0;
+                for (int b = 0; b < input.getBlockCount(); b++) {
+                    byte[] block = input.readBlock(b);
+                    output.put(position, block, 0, block.length);
+                    position += block.length;
+                }
+                if (position != output.length()) { throw new IOException("Corrupt archive header"); }
+            }
+            finally {
+                output.close();
+            }
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Decodes every block without writing anything, checking the codes against the record index,
+     * the block checksums, and the totals in the file header. Problems are printed to System.err.
+     * @param archivePath archive to check
+     * @return whether the archive decodes to exactly what was compressed
+     * @throws IOException if the archive can't be read
+     */
+    public static boolean verify(String archivePath) throws IOException {
+        ArchiveReader input;
+        try {
+            input = new ArchiveReader(archivePath);
+        }
+        catch (IOException e) {
+            System.err.println(archivePath + ": " + e.getMessage());
+            return false;
+        }
+
+        boolean ok = true;
+        try {
+            byte[] sink = new byte[0];
+            BitArrayReader bits = new BitArrayReader();
+            CRC32 crc = new CRC32();
+            long originalLength = 0;
+            for (int b = 0; b < input.getBlockCount(); b++) {
+                ArchiveBlock block = input.getBlock(b);
+                sink = HuffmanEncoder.ensureCapacity(sink, block.getRawLength());
+                String problem = block.check(input.getInput(), sink, bits, crc);
+                if (problem != null) {
+                    System.err.println(archivePath + ": block " + b + ": " + problem);
+                    ok = false;
+                }
+                originalLength += block.getRawLength();
+            }
+            if (originalLength != input.getOriginalLength()) {
+                System.err.println(archivePath + ": blocks hold " + originalLength + " bytes, header says " + input.getOriginalLength());
+                ok = false;
+            }
+        }
+        finally {
+            input.close();
+        }
+        return ok;
+    }
+
+    /**
+     * Usage: java HuffmanArchive compress file archive
+     *        java HuffmanArchive decompress archive file
+     *        java HuffmanArchive append archive file
+     *        java HuffmanArchive record archive number
+     *        java HuffmanArchive verify archive...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("compress")) {
+            compress(args[1], args[2]);
+        }
+        else if (args.length == 3 && args[0].equals("decompress")) {
+            decompress(args[1], args[2]);
+        }
+        else if (args.length == 3 && args[0].equals("append")) {
+            try (InputStream input = new FileInputStream(args[2])) {
+                append(args[1], input);
+            }
+        }
+        else if (args.length == 3 && args[0].equals("record")) {
+            ArchiveReader reader = new ArchiveReader(args[1]);
+            try {
+                System.out.println(reader.readRecord(Long.parseLong(args[2])));
+            }
+            finally {
+                reader.close();
+            }
+        }
+        else if (args.length >= 2 && args[0].equals("verify")) {
+            boolean ok = true;
+            for (int i = 1; i < args.length; i++) {
+                boolean archiveOk = verify(args[i]);
+                System.out.println(args[i] + (archiveOk ? ": OK" : ": FAILED"));
+                ok &= archiveOk;
+            }
+            if (!ok) { System.exit(1); }
+        }
+        else {
+            System.err.println("Usage: java HuffmanArchive compress file archive\n"
+                    + "       java HuffmanArchive decompress archive file\n"
+                    + "       java HuffmanArchive append archive file\n"
+                    + "       java HuffmanArchive record archive number\n"
+                    + "       java HuffmanArchive verify archive...");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decompresses bytes written by HuffmanEncoder. The decoder owns its code table and bit reader and reuses
+ * them for every call, so once it exists decompressing does not allocate.
+ * Not thread safe: give every thread its own decoder.
+ * Direct and read-only ByteBuffers go through copy arrays that are kept and only grow.
+ */
+public class HuffmanDecoder {
+    private final HuffmanTable table = new HuffmanTable();
+    private final BitArrayReader input = new BitArrayReader();
+    private int compressedLength;                       // compressed bytes used by the last decompress
+    private byte[] inputCopy = new byte[0];             // contents of a buffer without an array
+    private byte[] outputCopy = new byte[0];            // decompressed bytes for a buffer without an array
+    private final DictionaryRegistry dictionaries;      // resolves dictionary ids, null if none are used
+    private HuffmanDictionary lastDictionary;           // saves the registry lookup when messages use the same one
+
+    /**
+     * A decoder for data compressed without dictionaries
+     */
+    public HuffmanDecoder(){
+        this(null);
+    }
+
+    /**
+     * @param dictionaries where to find the dictionaries compressed data refers to
+     */
+    public HuffmanDecoder(DictionaryRegistry dictionaries){
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * @param input compressed bytes
+     * @param offset index of the first compressed byte
+     * @param length number of compressed bytes
+     * @return number of bytes decompress will write
+     * @throws IOException if the header is cut short or corrupt
+     */
+    public static int decompressedLength(byte[] input, int offset, int length) throws IOException {
+        if (length < 2) { throw new IOException("Compressed data cut short"); }
+        long originalLength = VarInt.read(input, offset + 1, offset + length);
+        if (originalLength < 0) { throw new IOException("Corrupt length"); }
+        if (originalLength > Integer.MAX_VALUE) { throw new IOException("Too large to decompress in memory"); }
+        return (int)originalLength;
+    }
+
+    /**
+     * @param input compressed bytes
+     * @param inputOffset index of the first compressed byte
+     * @param length number of compressed bytes
+     * @param output array to write to, at least decompressedLength bytes must fit after outputOffset
+     * @param outputOffset index of the first byte to write
+     * @return number of bytes written
+     * @throws IOException if the compressed bytes are cut short or corrupt
+     */
+    public int decompress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) throws IOException {
+        int end = inputOffset + length;
+        int originalLength = decompressedLength(input, inputOffset, length);
+        int mode = input[inputOffset];
+        int position = inputOffset + 1 + VarInt.size(originalLength);
+        if (output.length - outputOffset < originalLength) {
+            throw new IOException("Output too small for " + originalLength + " bytes");
+        }
+
+        if (mode == HuffmanEncoder.MODE_STORED) {
+            if (end - position < originalLength) { throw new IOException("Compressed data cut short"); }
+            System.arraycopy(input, position, output, outputOffset, originalLength);
+            compressedLength = position + originalLength - inputOffset;
+            return originalLength;
+        }
+
+        // the code is either stored with the data or is a shared dictionary
+        HuffmanTable code;
+        if (mode == HuffmanEncoder.MODE_TABLE) {
+            position = table.readLengths(input, position, end);
+            code = table;
+        }
+        else if (mode == HuffmanEncoder.MODE_DICTIONARY) {
+            long id = VarInt.read(input, position, end);
+            position += VarInt.size(id);
+            code = dictionary(id).getTable();
+        }
+        else { throw new IOException("Unknown compression mode " + mode); }
+
+        this.input.reset(input, position, end);
+        code.decode(this.input, output, outputOffset, originalLength);
+        if (this.input.overrun()) { throw new IOException("Compressed data cut short"); }
+        compressedLength = position + (int)((this.input.bitPosition() + 7) / 8) - inputOffset;
+        return originalLength;
+    }
+
+    /**
+     * @param id dictionary id from compressed data
+     * @return the dictionary, from the registry unless it is the one used last
+     * @throws IOException if there is no such dictionary
+     */
+    private HuffmanDictionary dictionary(long id) throws IOException {
+        if (lastDictionary != null && lastDictionary.getId() == id) { return lastDictionary; }
+        if (dictionaries == null || id < 0 || id > Integer.MAX_VALUE) { throw new IOException("Unknown dictionary " + id); }
+        lastDictionary = dictionaries.get((int)id);
+        return lastDictionary;
+    }
+
+    /**
+     * @return number of compressed bytes the last decompress used, less than given if more data followed
+     */
+    public int getCompressedLength(){
+        return compressedLength;
+    }
+
+    /**
+     * @param input compressed bytes
+     * @return the original bytes
+     * @throws IOException if the compressed bytes are cut short or corrupt
+     */
+    public byte[] decompress(byte[] input) throws IOException {
+        byte[] output = new byte[decompressedLength(input, 0, input.length)];
+        decompress(input, 0, input.length, output, 0);
+        return output;
+    }
+
+    /**
+     * Decompresses one compressed block from input into output, moving input past the block
+     * and output past the original bytes
+     * @param input compressed bytes, heap or direct
+     * @param output where to write, heap or direct
+     * @throws IOException if the compressed bytes are cut short or corrupt
+     * @throws BufferOverflowException if output has less remaining than the original length
+     */
+    public void decompress(ByteBuffer input, ByteBuffer output) throws IOException {
+        int length = input.remaining();
+
+        // use the backing arrays when there are any, else copy
+        byte[] in;
+        int inOffset;
+        if (input.hasArray()) {
+            in = input.array();
+            inOffset = input.arrayOffset() + input.position();
+        }
+        else {
+            inputCopy = HuffmanEncoder.ensureCapacity(inputCopy, length);
+            input.get(input.position(), inputCopy, 0, length);
+            in = inputCopy;
+            inOffset = 0;
+        }
+        int originalLength = decompressedLength(in, inOffset, length);
+        if (output.remaining() < originalLength) { throw new BufferOverflowException(); }
+
+        if (output.hasArray()) {
+            decompress(in, inOffset, length, output.array(), output.arrayOffset() + output.position());
+            output.position(output.position() + originalLength);
+        }
+        else {
+            outputCopy = HuffmanEncoder.ensureCapacity(outputCopy, originalLength);
+            decompress(in, inOffset, length, outputCopy, 0);
+            output.put(outputCopy, 0, originalLength);
+        }
+        input.position(input.position() + compressedLength);
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A code table trained on sample data and shared by encoder and decoder ahead of time, so small messages
+ * only carry the dictionary's id instead of their own code lengths.
+ * Every byte value gets a code, also the ones that never appeared in the samples.
+ *
+ * File layout: "HDIC", format version byte, id as an int, then the code lengths (see HuffmanTable.writeLengths)
+ */
+public class HuffmanDictionary {
+    public static final int FORMAT_VERSION = 1;          // bumped when the file layout changes
+    private static final byte[] magic = {'H', 'D', 'I', 'C'};
+
+    private final int id;                                 // referenced from compressed data
+    private final HuffmanTable table;                     // never rebuilt, so shared by all threads
+
+    /**
+     * @param id number compressed data refers to the dictionary by, non-negative
+     * @param table code to share, with a code for every byte value, must not be changed afterwards
+     */
+    public HuffmanDictionary(int id, HuffmanTable table){
+        if (id < 0) { throw new IllegalArgumentException("Dictionary id must not be negative"); }
+        if (table.getSymbolCount() != HuffmanTable.SYMBOLS) {
+            throw new IllegalArgumentException("Dictionary must have a code for every byte value");
+        }
+        this.id = id;
+        this.table = table;
+    }
+
+    // getters
+    public int getId(){return id;}
+    public HuffmanTable getTable(){return table;}
+
+    /**
+     * Builds a dictionary from the bytes of sample files, see Histogram.toDictionary
+     * @param id number for the new dictionary
+     * @param sampleFiles files typical of the messages that will be compressed
+     * @return the trained dictionary
+     * @throws IOException if a sample can't be read
+     */
+    public static HuffmanDictionary train(int id, List<String> sampleFiles) throws IOException {
+        Histogram histogram = new Histogram();
+        for (String fileName : sampleFiles) {
+            histogram.addFile(fileName);
+        }
+        return histogram.toDictionary(id);
+    }
+
+    /**
+     * @param pathName where to write the dictionary file
+     * @throws IOException if the file can't be written
+     */
+    public void save(String pathName) throws IOException {
+        byte[] lengths = new byte[table.lengthsSize()];
+        table.writeLengths(lengths, 0);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pathName)))) {
+            output.write(magic);
+            output.writeByte(FORMAT_VERSION);
+            output.writeInt(id);
+            output.write(lengths);
+        }
+    }
+
+    /**
+     * @param pathName dictionary file written by save
+     * @return the dictionary
+     * @throws IOException if the file can't be read, or isn't a complete dictionary of a known version
+     */
+    public static HuffmanDictionary load(String pathName) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(pathName)))) {
+            byte[] header = new byte[magic.length];
+            input.readFully(header);
+            if (!Arrays.equals(header, magic)) { throw new IOException(pathName + " is not a dictionary"); }
+            int version = input.readUnsignedByte();
+            if (version != FORMAT_VERSION) { throw new IOException("Unknown dictionary version " + version); }
+            int id = input.readInt();
+
+            byte[] lengths = input.readAllBytes();
+            HuffmanTable table = new HuffmanTable();
+            table.readLengths(lengths, 0, lengths.length);
+            if (table.getSymbolCount() != HuffmanTable.SYMBOLS) {
+                throw new IOException(pathName + " does not have a code for every byte value");
+            }
+            return new HuffmanDictionary(id, table);
+        }
+    }
+
+    /**
+     * Usage: java HuffmanDictionary id dictionaryFile sampleDirectory|sampleFile...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java HuffmanDictionary id dictionaryFile sampleDirectory|sampleFile...");
+            return;
+        }
+
+        List<String> samples = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (new File(args[i]).isDirectory()) { samples.addAll(BatchCompression.listFiles(args[i])); }
+            else { samples.add(args[i]); }
+        }
+
+        HuffmanDictionary dictionary = train(Integer.parseInt(args[0]), samples);
+        dictionary.save(args[1]);
+        System.out.println("Trained dictionary " + dictionary.getId() + " on " + samples.size() + " files, saved in " + args[1]);
+    }
+}
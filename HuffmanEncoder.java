@@ -0,0 +1,184 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses bytes in memory. The encoder owns its histogram, code table and bit writer and reuses them
+ * for every call, so once it exists compressing does not allocate (except to add tables to a table cache).
+ * Not thread safe: give every thread its own encoder.
+ * Direct and read-only ByteBuffers go through copy arrays that are kept and only grow.
+ *
+ * Compressed layout:
+ *   mode byte, original length as a VarInt, then for MODE_TABLE the code lengths (see HuffmanTable.writeLengths)
+ *   followed by the codes, for MODE_DICTIONARY the dictionary id as a VarInt followed by the codes,
+ *   or for MODE_STORED the bytes themselves
+ */
+public class HuffmanEncoder {
+    public static final int MODE_STORED = 0;            // bytes copied as they are, when coding wouldn't save anything
+    public static final int MODE_TABLE = 1;             // code lengths, then the coded bytes
+    public static final int MODE_DICTIONARY = 2;        // id of a shared dictionary, then the coded bytes
+
+    private final long[] histogram = new long[HuffmanTable.SYMBOLS];
+    private final HuffmanTable table = new HuffmanTable();
+    private final BitArrayWriter output = new BitArrayWriter();
+    private byte[] inputCopy = new byte[0];             // contents of a buffer without an array
+    private byte[] outputCopy = new byte[0];            // compressed bytes for a buffer without an array
+    private final HuffmanDictionary dictionary;         // code shared by every input, null to build one per input
+    private HuffmanTableCache tableCache;               // tables built for earlier inputs, null to always build
+
+    /**
+     * An encoder that builds a code for every input and stores it with the codes
+     */
+    public HuffmanEncoder(){
+        this(null);
+    }
+
+    /**
+     * @param dictionary shared code to encode every input with, only its id is stored; null to build one per input
+     */
+    public HuffmanEncoder(HuffmanDictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param length number of bytes to compress
+     * @return most bytes compress can write for them
+     * @throws IllegalArgumentException if that is more than an array can hold
+     */
+    public static int maxCompressedLength(int length){
+        if (length > Integer.MAX_VALUE - 1 - VarInt.MAX_SIZE) {
+            throw new IllegalArgumentException("Too many bytes to compress at once: " + length);
+        }
+        return 1 + VarInt.MAX_SIZE + length;
+    }
+
+    /**
+     * @param tableCache tables to reuse for inputs with about the same byte frequencies, shared with other
+     *                   encoders if wished; null to build a table for every input
+     */
+    public void setTableCache(HuffmanTableCache tableCache){
+        this.tableCache = tableCache;
+    }
+
+    /**
+     * Clears the histogram, it is recounted by every compress anyway
+     */
+    public void reset(){
+        Arrays.fill(histogram, 0);
+    }
+
+    /**
+     * @param input bytes to compress
+     * @param inputOffset index of the first byte
+     * @param length number of bytes
+     * @param output array to write to, at least maxCompressedLength(length) bytes must fit after outputOffset
+     * @param outputOffset index of the first byte to write
+     * @return number of bytes written
+     */
+    public int compress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset){
+        // count every byte and build the code for them, unless there is a dictionary
+        reset();
+        for (int i = inputOffset, end = inputOffset + length; i < end; i++) {
+            histogram[input[i] & 0xFF]++;
+        }
+        // a dictionary without a code for one of the bytes can't be used, build a table as if there were none
+        long dictionaryBits = dictionary != null ? dictionary.getTable().encodedBits(histogram) : -1;
+        boolean useDictionary = dictionaryBits >= 0;
+        HuffmanTable code;
+        long codedSize;
+        if (useDictionary) {
+            code = dictionary.getTable();
+            codedSize = VarInt.size(dictionary.getId()) + (dictionaryBits + 7) / 8;
+        }
+        else {
+            HuffmanTable cached = tableCache != null ? tableCache.get(histogram) : null;
+            if (cached == null) {
+                table.build(histogram);
+                // the cache keeps its own copy, this encoder's table is rebuilt by the next input
+                if (tableCache != null) {
+                    HuffmanTable shared = new HuffmanTable();
+                    shared.copyFrom(table);
+                    tableCache.put(histogram, shared);
+                }
+            }
+            code = cached != null ? cached : table;
+            codedSize = code.lengthsSize() + (code.encodedBits(histogram) + 7) / 8;
+        }
+
+        // store the bytes as they are if the table and codes wouldn't be smaller
+        int position = outputOffset;
+        if (length == 0 || codedSize >= length) {
+            output[position++] = MODE_STORED;
+            position = VarInt.write(output, position, length);
+            System.arraycopy(input, inputOffset, output, position, length);
+            return position + length - outputOffset;
+        }
+
+        if (useDictionary) {
+            output[position++] = MODE_DICTIONARY;
+            position = VarInt.write(output, position, length);
+            position = VarInt.write(output, position, dictionary.getId());
+        }
+        else {
+            output[position++] = MODE_TABLE;
+            position = VarInt.write(output, position, length);
+            position = code.writeLengths(output, position);
+        }
+        this.output.reset(output, position);
+        code.encode(this.output, input, inputOffset, length);
+        return this.output.flush() - outputOffset;
+    }
+
+    /**
+     * @param input bytes to compress
+     * @return the compressed bytes
+     */
+    public byte[] compress(byte[] input){
+        byte[] output = new byte[maxCompressedLength(input.length)];
+        int length = compress(input, 0, input.length, output, 0);
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Compresses the remaining bytes of input into output, moving both positions on
+     * @param input bytes to compress, heap or direct
+     * @param output where to write, heap or direct
+     * @throws BufferOverflowException if output has less than maxCompressedLength remaining
+     */
+    public void compress(ByteBuffer input, ByteBuffer output){
+        int length = input.remaining();
+        if (output.remaining() < maxCompressedLength(length)) { throw new BufferOverflowException(); }
+
+        // use the backing arrays when there are any, else copy
+        byte[] in;
+        int inOffset;
+        if (input.hasArray()) {
+            in = input.array();
+            inOffset = input.arrayOffset() + input.position();
+        }
+        else {
+            inputCopy = ensureCapacity(inputCopy, length);
+            input.get(input.position(), inputCopy, 0, length);
+            in = inputCopy;
+            inOffset = 0;
+        }
+        input.position(input.limit());
+
+        if (output.hasArray()) {
+            int written = compress(in, inOffset, length, output.array(), output.arrayOffset() + output.position());
+            output.position(output.position() + written);
+        }
+        else {
+            outputCopy = ensureCapacity(outputCopy, maxCompressedLength(length));
+            int written = compress(in, inOffset, length, outputCopy, 0);
+            output.put(outputCopy, 0, written);
+        }
+    }
+
+    /**
+     * @return buffer if it holds size bytes, else a new big enough one
+     */
+    static byte[] ensureCapacity(byte[] buffer, int size){
+        return buffer.length >= size ? buffer : new byte[Math.max(size, buffer.length * 2)];
+    }
+}
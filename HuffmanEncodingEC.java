@@ -7,26 +7,24 @@ import java.util.StringTokenizer;
 public class HuffmanEncodingEC {
 
 
-    private static boolean debugFlag = false;         // used to check if the code is working
-    private static char file = 'u';                   // determines which files to compress/decompress
+    private static final boolean debugFlag = false;         // used to check if the code is working
+    private static final char file = 'u';                   // determines which files to compress/decompress
                                                       // 't' for test cases, 'w' for war and peace, 'u' for us constitution
     // delimiters used for tree string (helpful for parsing a Newick tree)
-    private static String delimiter1 = String.valueOf((char)(29));
-    private static String delimiter2 = String.valueOf((char)(30));
-    private static String delimiter3 = String.valueOf((char)(31));
+    private static final String delimiter1 = String.valueOf((char)(29));
+    private static final String delimiter2 = String.valueOf((char)(30));
+    private static final String delimiter3 = String.valueOf((char)(31));
     // delimiter to determine when tree string ends and compressed file begins
-    private static char endOfTreeIndicator = (char)(28);
-    // used in Newick parsing to take care of boundary case
-    private static Boolean hasRightChild;
+    static final char endOfTreeIndicator = (char)(28);
 
 
     /**
      * @param fileName file to read characters from
      * @return a map with all characters in the text(keys) and their corresponding frequency(value)
      */
-    public static Map<Character, Integer> frequencyTable(String fileName){
+    public static Map<Character, Long> frequencyTable(String fileName){
         // create a map to be returned with all characters and their frequency
-        Map<Character, Integer> characterFrequencies = new HashMap<>();
+        Map<Character, Long> characterFrequencies = new HashMap<>();
         BufferedReader input;
 
         // Open the file, if possible
@@ -49,7 +47,7 @@ public class HuffmanEncodingEC {
                 }
                 // else create a new key for the character with value 1
                 else {
-                    characterFrequencies.put((char)c, 1);
+                    characterFrequencies.put((char)c, 1L);
                 }
             }
         }
@@ -87,7 +85,7 @@ public class HuffmanEncodingEC {
         if(!frequencyTable.isEmpty()){
             for(Object c: frequencyTable.keySet()){
                 // create a new node with character and frequency given by the map
-                CData d = new CData((char) c, (int)frequencyTable.get(c));
+                CData d = new CData((char) c, (long)frequencyTable.get(c));
                 BinaryTree<CData> b = new BinaryTree<>(d);
                 // add tree (node) to the queue
                 queue.add(b);
@@ -207,7 +205,7 @@ public class HuffmanEncodingEC {
         String treeString = "";
         if(tree == null){
             // if there is no tree return the equivalent to (,)
-            return delimiter1+delimiter2+delimiter3 + endOfTreeIndicator;
+            return delimiter1+delimiter2+delimiter3;
         }
         if(!tree.isLeaf()){
             // equivalent to (
@@ -254,90 +252,15 @@ public class HuffmanEncodingEC {
      * @param fileName the path name for the original document we wish to compress
      */
     public static void compress(String fileName){
-        // create tree and map with all characters and string with path
-        BinaryTree<CData> tree = tree(fileName);
-        Map<Character, String> codeMap = codeRetrieval(tree);
-        BufferedBitWriterEC output;
-        BufferedReader input;
         // direction for compressed file
         String compressedPathName = fileName.substring(0, fileName.length()-4) + "_compressedEC.txt";
 
-        // Open the input file, if possible, else stop process
-        try {
-            input = new BufferedReader(new FileReader(fileName));
-        }
-        catch (FileNotFoundException e) {
-            System.err.println("Cannot open file.\n" + e.getMessage());
-            return;
-        }
-
-        // Open the output file, if possible
-        try {
-            output = new BufferedBitWriterEC(compressedPathName);
-        }
-        catch (IOException e) {
-            System.err.println("Cannot open file.\n" + e.getMessage());
-            return;
-        }
-
-        // go over input file and write over output file
-        try{
-            // Character by character
-            output.writeString(treeToString(tree)+ endOfTreeIndicator);
-
-            int c;
-            // as long as there are characters to read
-            while ((c = input.read()) != -1) {
-                // find in map
-                String characterCode = codeMap.get((char)c);
-                // used for debugging purposes,
-                // to see if compression works
-                if (debugFlag) {
-                    System.out.println(characterCode);}
-                // loop over code to convert to bit
-                for(int i = 0; i< characterCode.length(); i++){
-                    // if it's to the right in the binary tree
-                    if(characterCode.charAt(i) == '1'){
-                        output.writeBit(true);
-
-                        // used for debugging purposes,
-                        // to see if compression works
-                        if (debugFlag) {
-                            System.out.println("true");
-
-                        }
-                    }
-                    // if to the left
-                    else {
-                        output.writeBit(false);
-
-                        // used for debugging purposes,
-                        // to see if compression works
-                        if (debugFlag) {
-                            System.out.println("false");
-                        }
-                    }
-                }
-            }
-        }
-        catch (IOException e) {
-            System.err.println("IO error while reading.\n" + e.getMessage());
-        }
-
-        // Close the output file, if possible
-        try{
-            output.close();
-        }
-        catch (IOException e) {
-            System.err.println("Cannot close file.\n" + e.getMessage());
-        }
-
-        // Close the input file, if possible
+        // create tree and map with all characters and string with path, then write the file
         try {
-            input.close();
+            TextEncoder.forFile(fileName).compress(fileName, compressedPathName);
         }
         catch (IOException e) {
-            System.err.println("Cannot close file.\n" + e.getMessage());
+            System.err.println("IO error while compressing.\n" + e.getMessage());
         }
     }
 
@@ -365,17 +288,17 @@ public class HuffmanEncodingEC {
             // Inner node
             BinaryTree<CData> left = parseNewick(st);
             String comma = st.nextToken();
-            hasRightChild = true;
+            // a missing right child consumes the closing delimiter itself
             BinaryTree<CData> right = parseNewick(st);
-            if(hasRightChild) {
+            if(right != null) {
                 String close = st.nextToken();
             }
             String label = st.nextToken();
 
             String[] pieces = label.split(":");
-            int frequency;
+            long frequency;
 
-            if(hasRightChild) {
+            if(right != null) {
                 frequency = left.getData().getFrequency() + right.getData().getFrequency();
             } else{
                 frequency = left.getData().getFrequency();
@@ -386,20 +309,19 @@ public class HuffmanEncodingEC {
         // Leaf
         else {
 
-            // no right child
+            // no right child, the encoder's tree has none either
             if (token.equals(delimiter3)){
-                hasRightChild = false;
-                return new BinaryTree<>(null);
+                return null;
             }
             // make sure ":" is separation between character and frequency, not character
             else if(token.charAt(0)== ':'){
                 // if character create the following tree:
-                int frequency = Integer.parseInt(token.substring(2, token.length()-1));
+                long frequency = Long.parseLong(token.substring(2));
                 return new BinaryTree<CData>(new CData(':', frequency), null, null);
             }
             else{
                 String[] pieces = token.split(":");
-                return new BinaryTree<CData>(new CData(pieces[0].charAt(0), Integer.parseInt(pieces[1])), null, null);
+                return new BinaryTree<CData>(new CData(pieces[0].charAt(0), Long.parseLong(pieces[1])), null, null);
             }
         }
     }
@@ -410,91 +332,16 @@ public class HuffmanEncodingEC {
      * @param fileName file to be decompressed
      */
     public static void decompress(String fileName){
-        // retrieve binary tree with characters as leaves
-        BinaryTree<CData> huffmanTree;
-
-        BufferedWriter output;
-        BufferedBitReaderEC input;
-
         // where to send decompressed file
         String decompressedPathName = fileName.substring(0, fileName.length()-17) + "_decompressedEC.txt";
 
-        // Open the input file, if possible, else stop process
-        try {
-            input = new BufferedBitReaderEC(fileName);
-        }
-        catch (IOException e) {
-            System.err.println("IO error while reading.\n" + e.getMessage());
-            return;
-        }
-
-        // Open the output file, if possible
+        // retrieve binary tree with characters as leaves, then decode the rest of the file
         try {
-            output = new BufferedWriter(new FileWriter(decompressedPathName));
+            new TextDecoder().decompress(fileName, decompressedPathName);
         }
         catch (IOException e) {
-            System.err.println("Cannot open file.\n" + e.getMessage());
-            return;
+            System.err.println("IO error while decompressing.\n" + e.getMessage());
         }
-
-        // go over input file and write over output file
-        try{
-
-            String treeString = "";
-            char current = input.readCharacter();
-            while(current != endOfTreeIndicator){
-
-                treeString += current;
-                current = input.readCharacter();
-            }
-            huffmanTree = parseNewick(treeString);
-
-            // start at head of binary tree
-            BinaryTree<CData> t = huffmanTree;
-            while(input.hasNext()) {
-                boolean bit = input.readBit();                     // read bit
-                // have not yet gotten to the end of the character code
-                if(!t.isLeaf()){
-                    // if bit is a 1, move right on the tree
-                    if(bit){
-                        t = t.getRight();
-
-                        // used for debugging purposes,
-                        // to see if decompression works
-                        if (debugFlag) { System.out.println("right"); }
-                    }
-                    // if bit is a 0, move left on the tree
-                    else {
-                        t = t.getLeft();
-
-                        // used for debugging purposes,
-                        // to see if decompression works
-                        if (debugFlag) { System.out.println("left"); }
-                    }
-
-                    // check to see if we have found the character, now that we moved
-                    if(t.isLeaf()) {
-                        // write to decompressed file and restart current tree node for next search
-                        output.write(t.getData().getCharacter());
-                        t = huffmanTree;
-
-                        // used for debugging
-                        if (debugFlag) { System.out.println("found"); }
-                    }
-                }
-
-            }
-
-        }
-        catch (IOException e) { System.err.println("IO error while reading.\n" + e.getMessage()); }
-
-        // Close the output file, if possible
-        try{ output.close(); }
-        catch (IOException e) { System.err.println("Cannot close file.\n" + e.getMessage()); }
-
-        // Close the input file, if possible
-        try { input.close(); }
-        catch (IOException e) { System.err.println("Cannot close file.\n" + e.getMessage()); }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Canonical Huffman code for byte symbols.
+ * Only the code length of each symbol has to be stored, codes are assigned in order of (length, symbol).
+ * Codes are limited to MAX_CODE_LENGTH bits and decoded with a lookup table for the common short ones.
+ *
+ * A table owns all the arrays it needs, so rebuilding it with build or readLengths does not allocate.
+ * Once it is no longer rebuilt it is only read, and can be shared by any number of threads.
+ */
+public class HuffmanTable {
+    public static final int SYMBOLS = 256;            // one symbol per byte value
+    public static final int MAX_CODE_LENGTH = 24;     // longest code, so a code always fits in an int
+    private static final int LOOKUP_BITS = 10;        // codes up to this long are decoded with one lookup
+
+    private final int[] lengths = new int[SYMBOLS];   // code length of every symbol, 0 if it has no code
+    private final int[] codes = new int[SYMBOLS];     // code of every symbol, right aligned
+    private int symbolCount;                          // number of symbols with a code
+    private int maxLength;                            // longest code in use
+
+    // canonical decoding: codes of one length are consecutive numbers
+    private final int[] count = new int[MAX_CODE_LENGTH + 1];       // number of codes of every length
+    private final int[] firstCode = new int[MAX_CODE_LENGTH + 1];   // smallest code of every length
+    private final int[] firstIndex = new int[MAX_CODE_LENGTH + 1];  // where codes of every length start in sortedSymbols
+    private final int[] sortedSymbols = new int[SYMBOLS];           // symbols sorted by code
+    private final int[] lookup = new int[1 << LOOKUP_BITS];         // (symbol << 8) | length, by the next LOOKUP_BITS bits
+
+    // scratch used by build: leaves are nodes 0..n-1, inner nodes follow in the order they are joined
+    private final long[] weight = new long[2 * SYMBOLS];
+    private final int[] parent = new int[2 * SYMBOLS];
+    private final int[] depth = new int[2 * SYMBOLS];
+    private final int[] heap = new int[SYMBOLS];
+
+    /**
+     * Builds the code for a histogram, the way HuffmanEncodingEC.tree does: repeatedly join the two
+     * least frequent trees. If a code comes out too long, frequencies are halved and it is built again.
+     * @param histogram number of times each byte value appears
+     */
+    public void build(long[] histogram){
+        Arrays.fill(lengths, 0);
+        for (int shift = 0; ; shift++) {
+            if (buildLengths(histogram, shift) <= MAX_CODE_LENGTH) { break; }
+        }
+        assignCodes();
+    }
+
+    /**
+     * @return the length of the longest code
+     */
+    private int buildLengths(long[] histogram, int shift){
+        // one leaf per symbol that appears, sortedSymbols is free until assignCodes
+        int[] symbolOfLeaf = sortedSymbols;
+        int n = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (histogram[s] > 0) {
+                weight[n] = Math.max(1, histogram[s] >> shift);
+                symbolOfLeaf[n++] = s;
+            }
+        }
+        // keep a case for a single symbol, it still needs a one bit code
+        if (n == 0) { return 0; }
+        if (n == 1) {
+            lengths[symbolOfLeaf[0]] = 1;
+            return 1;
+        }
+
+        int heapSize = 0;
+        for (int i = 0; i < n; i++) {
+            heap[heapSize] = i;
+            siftUp(heapSize++);
+        }
+        int next = n;
+        while (heapSize > 1) {
+            // extract the two with least frequency
+            int t1 = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(0, heapSize);
+            int t2 = heap[0];
+
+            // "join" the nodes and keep track of their frequency sum with a new node
+            weight[next] = weight[t1] + weight[t2];
+            parent[t1] = next;
+            parent[t2] = next;
+            heap[0] = next++;
+            siftDown(0, heapSize);
+        }
+
+        // every node is one deeper than its parent, and parents come after their children
+        int root = next - 1;
+        depth[root] = 0;
+        int longest = 0;
+        for (int i = root - 1; i >= 0; i--) {
+            depth[i] = depth[parent[i]] + 1;
+        }
+        for (int i = 0; i < n; i++) {
+            lengths[symbolOfLeaf[i]] = depth[i];
+            longest = Math.max(longest, depth[i]);
+        }
+        return longest;
+    }
+
+    private boolean lighter(int a, int b){
+        return weight[a] < weight[b] || (weight[a] == weight[b] && a < b);
+    }
+
+    private void siftUp(int i){
+        int node = heap[i];
+        while (i > 0 && lighter(node, heap[(i - 1) >> 1])) {
+            heap[i] = heap[(i - 1) >> 1];
+            i = (i - 1) >> 1;
+        }
+        heap[i] = node;
+    }
+
+    private void siftDown(int i, int heapSize){
+        int node = heap[i];
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && lighter(heap[child + 1], heap[child])) { child++; }
+            if (!lighter(heap[child], node)) { break; }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = node;
+    }
+
+    /**
+     * Gives every symbol its canonical code from the lengths, and fills the decoding tables
+     */
+    private void assignCodes(){
+        Arrays.fill(count, 0);
+        symbolCount = 0;
+        maxLength = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (lengths[s] > 0) {
+                count[lengths[s]]++;
+                symbolCount++;
+                maxLength = Math.max(maxLength, lengths[s]);
+            }
+        }
+
+        int code = 0;
+        int index = 0;
+        for (int len = 1; len <= MAX_CODE_LENGTH; len++) {
+            code = (code + count[len - 1]) << 1;
+            firstCode[len] = code;
+            firstIndex[len] = index;
+            index += count[len];
+        }
+        // codes of one length go to the symbols in increasing order
+        int[] nextCode = heap;                  // scratch, free outside of build
+        System.arraycopy(firstCode, 0, nextCode, 0, MAX_CODE_LENGTH + 1);
+        for (int s = 0; s < SYMBOLS; s++) {
+            int len = lengths[s];
+            if (len > 0) {
+                codes[s] = nextCode[len]++;
+                sortedSymbols[firstIndex[len] + codes[s] - firstCode[len]] = s;
+            }
+        }
+
+        // every code up to LOOKUP_BITS long fills all the lookup entries it is a prefix of
+        Arrays.fill(lookup, 0);
+        for (int s = 0; s < SYMBOLS; s++) {
+            int len = lengths[s];
+            if (len > 0 && len <= LOOKUP_BITS) {
+                int first = codes[s] << (LOOKUP_BITS - len);
+                Arrays.fill(lookup, first, first + (1 << (LOOKUP_BITS - len)), (s << 8) | len);
+            }
+        }
+    }
+
+    // getters
+    public int getLength(int symbol){return lengths[symbol];}
+    public int getCode(int symbol){return codes[symbol];}
+    public int getSymbolCount(){return symbolCount;}
+    public int getMaxLength(){return maxLength;}
+
+    /**
+     * @param histogram number of times each byte value appears
+     * @return number of bits the histogram's bytes take with this code, -1 if one of them has no code
+     */
+    public long encodedBits(long[] histogram){
+        long bits = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (histogram[s] > 0) {
+                if (lengths[s] == 0) { return -1; }
+                bits += histogram[s] * lengths[s];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the code of every byte
+     * @param output where to write the codes
+     * @param input bytes to encode, each must have a code
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void encode(BitArrayWriter output, byte[] input, int offset, int length){
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int s = input[i] & 0xFF;
+            output.writeBits(codes[s], lengths[s]);
+        }
+    }
+
+    /**
+     * Reads count symbols
+     * @param input where to read the codes from
+     * @param output where to write the bytes
+     * @param offset index of the first byte to write
+     * @param count number of bytes to decode
+     * @throws IOException if the bits are not a code of this table
+     */
+    public void decode(BitArrayReader input, byte[] output, int offset, int count) throws IOException {
+        for (int i = offset, end = offset + count; i < end; i++) {
+            output[i] = (byte)decodeSymbol(input);
+        }
+    }
+
+    /**
+     * @param input where to read the code from
+     * @return the next symbol
+     * @throws IOException if the bits are not a code of this table
+     */
+    public int decodeSymbol(BitArrayReader input) throws IOException {
+        input.refill();
+        int entry = lookup[input.peekBits(LOOKUP_BITS)];
+        if (entry != 0) {
+            input.skipBits(entry & 0xFF);
+            return entry >>> 8;
+        }
+        // long code: try one length after the other
+        int bits = input.peekBits(MAX_CODE_LENGTH);
+        for (int len = LOOKUP_BITS + 1; len <= maxLength; len++) {
+            int index = (bits >>> (MAX_CODE_LENGTH - len)) - firstCode[len];
+            if (index >= 0 && index < count[len]) {
+                input.skipBits(len);
+                return sortedSymbols[firstIndex[len] + index];
+            }
+        }
+        throw new IOException("Invalid code in compressed data");
+    }
+
+    /**
+     * @return number of bytes writeLengths needs
+     */
+    public int lengthsSize(){
+        return symbolCount == 0 ? 1 : 1 + 2 * symbolCount;
+    }
+
+    /**
+     * Writes the code lengths: number of symbols - 1, then every symbol with its length.
+     * A table without symbols is written as a single 0 followed by nothing, since it is never read back
+     * for empty input.
+     * @param output array to write to
+     * @param offset index of the first byte
+     * @return index after the last byte written
+     */
+    public int writeLengths(byte[] output, int offset){
+        output[offset++] = (byte)Math.max(0, symbolCount - 1);
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (lengths[s] > 0) {
+                output[offset++] = (byte)s;
+                output[offset++] = (byte)lengths[s];
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Rebuilds the table from lengths written by writeLengths
+     * @param input array to read from
+     * @param offset index of the first byte
+     * @param end index after the last byte that may be read
+     * @return index after the last byte read
+     * @throws IOException if the lengths are cut short or are not a valid prefix code
+     */
+    public int readLengths(byte[] input, int offset, int end) throws IOException {
+        if (offset >= end) { throw new IOException("Missing code table"); }
+        int n = (input[offset++] & 0xFF) + 1;
+        if (offset + 2 * n > end) { throw new IOException("Code table cut short"); }
+
+        Arrays.fill(lengths, 0);
+        long kraft = 0;                     // sum of 2^-length, scaled by 2^MAX_CODE_LENGTH
+        for (int i = 0; i < n; i++) {
+            int s = input[offset++] & 0xFF;
+            int len = input[offset++] & 0xFF;
+            if (len == 0 || len > MAX_CODE_LENGTH || lengths[s] != 0) {
+                throw new IOException("Invalid code table");
+            }
+            lengths[s] = len;
+            kraft += 1L << (MAX_CODE_LENGTH - len);
+        }
+        if (kraft > 1L << MAX_CODE_LENGTH) { throw new IOException("Invalid code table"); }
+        assignCodes();
+        return offset;
+    }
+
+    /**
+     * Copies the code lengths of another table and assigns the same codes
+     * @param other table to copy
+     */
+    public void copyFrom(HuffmanTable other){
+        System.arraycopy(other.lengths, 0, lengths, 0, SYMBOLS);
+        assignCodes();
+    }
+}
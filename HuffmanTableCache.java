@@ -0,0 +1,144 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of built code tables, so inputs with nearly the same byte frequencies
+ * (rotated logs of one service, say) share a code instead of building their own.
+ *
+ * Tables are found by a fingerprint of the histogram where every frequency is rounded to a power of two
+ * of its share of the input, about how finely Huffman code lengths tell frequencies apart.
+ * A table found this way is only used if it has a code for every byte of the input and costs at most
+ * maxPenalty more than the best possible code; otherwise the input gets its own table.
+ * Safe to share between threads.
+ */
+public class HuffmanTableCache {
+    private final int capacity;                      // most tables kept
+    private final double maxPenalty;                 // accepted size increase over the best code, 0.05 is 5%
+    private final LinkedHashMap<Long, HuffmanTable> tables;
+
+    // metrics
+    private long hits;                               // cached table used
+    private long misses;                             // no table with the fingerprint
+    private long rejections;                         // table with the fingerprint, but too costly or missing codes
+    private long evictions;                          // tables dropped to stay within capacity
+
+    /**
+     * @param capacity most tables to keep
+     * @param maxPenalty accepted size increase over the best code for a cached table, as a fraction
+     */
+    public HuffmanTableCache(int capacity, double maxPenalty){
+        this.capacity = capacity;
+        this.maxPenalty = maxPenalty;
+        // access order, so the eldest entry is the least recently used one
+        this.tables = new LinkedHashMap<Long, HuffmanTable>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, HuffmanTable> eldest) {
+                if (size() > HuffmanTableCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param histogram number of times each byte value appears
+     * @return a hash of the histogram with every frequency rounded to a power of two of its share of the input
+     */
+    public static long fingerprint(long[] histogram){
+        long total = 0;
+        for (long count : histogram) { total += count; }
+
+        long hash = 0xcbf29ce484222325L;            // 64 bit FNV-1a over the rounded frequencies
+        for (long count : histogram) {
+            // share of the input in 1/65536ths, rounded down to a power of two (bucket 0 for none at all)
+            int bucket = count == 0 ? 0 : 1 + 64 - Long.numberOfLeadingZeros(shareOf(count, total));
+            hash = (hash ^ bucket) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * count * 65536 / total rounded down to a power of two, without count * 65536 overflowing
+     * @param count times a byte value appears, at most total
+     * @param total number of bytes, more than 0
+     * @return the share, 0 if less than 1/65536
+     */
+    static long shareOf(long count, long total){
+        // the difference in highest bits is log2(count / total) rounded down, or one too many
+        // when count's bits from its highest one on are smaller than total's
+        int log2 = Long.numberOfLeadingZeros(total) - Long.numberOfLeadingZeros(count);
+        long countBits = count << Long.numberOfLeadingZeros(count);
+        long totalBits = total << Long.numberOfLeadingZeros(total);
+        if (Long.compareUnsigned(countBits, totalBits) < 0) { log2--; }
+        return log2 + 16 < 0 ? 0 : 1L << (log2 + 16);
+    }
+
+    /**
+     * @param histogram number of times each byte value appears
+     * @return a table close enough to the best code for the histogram, or null
+     */
+    public HuffmanTable get(long[] histogram){
+        long fingerprint = fingerprint(histogram);
+        HuffmanTable table;
+        synchronized (this) {
+            table = tables.get(fingerprint);
+            if (table == null) {
+                misses++;
+                return null;
+            }
+        }
+
+        // the best code can't beat the entropy, nor use less than one bit per byte
+        long cachedBits = table.encodedBits(histogram);
+        boolean acceptable = cachedBits >= 0 && cachedBits <= (1 + maxPenalty) * bestBits(histogram);
+        synchronized (this) {
+            if (acceptable) { hits++; }
+            else { rejections++; }
+        }
+        return acceptable ? table : null;
+    }
+
+    /**
+     * @param histogram the histogram the table was built for
+     * @param table table to share, must not be changed afterwards
+     */
+    public synchronized void put(long[] histogram, HuffmanTable table){
+        tables.put(fingerprint(histogram), table);
+    }
+
+    /**
+     * @return lower bound of the bits any code needs for the histogram
+     */
+    private static double bestBits(long[] histogram){
+        long total = 0;
+        for (long count : histogram) { total += count; }
+
+        double entropyBits = 0;
+        for (long count : histogram) {
+            if (count > 0) { entropyBits += count * (Math.log((double)total / count) / Math.log(2)); }
+        }
+        return Math.max(entropyBits, total);
+    }
+
+    // metrics
+    public synchronized long getHits(){return hits;}
+    public synchronized long getMisses(){return misses;}
+    public synchronized long getRejections(){return rejections;}
+    public synchronized long getEvictions(){return evictions;}
+    public synchronized int size(){return tables.size();}
+
+    /**
+     * @return share of lookups that found a usable table
+     */
+    public synchronized double hitRate(){
+        long lookups = hits + misses + rejections;
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    // Override default toString()
+    public synchronized String toString(){
+        return String.format("%d tables, %d hits, %d misses, %d rejected, %d evicted, %.1f%% hit rate",
+                tables.size(), hits, misses, rejections, evictions, 100 * hitRate());
+    }
+}
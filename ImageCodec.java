@@ -0,0 +1,336 @@
+import java.awt.image.*;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Image compression by color channel: the red, green, blue and alpha bytes of the pixels are coded as four
+ * separate planes, each with its own HuffmanTable of at most 256 symbols. Unlike the one code per ARGB color
+ * of ImageCompression, the code tables stay small however many colors a photo has, and are decoded with
+ * HuffmanTable's lookup table. A plane with the same byte in every pixel, like the alpha of an opaque image,
+ * is not coded at all, only that byte is stored.
+ * Before coding, every row of a plane goes through the RowFilter that suits it best, so what is coded is
+ * mostly small differences between neighboring pixels.
+ *
+ * The image is cut into tiles coded on their own, with their own tables and filters, so tiles are encoded
+ * and decoded in parallel, and CompressedImage can decode just the tiles a region touches.
+ *
+ * File layout, numbers big-endian:
+ *   "HIMG", format version byte, width (int), height (int), tile width (int), tile height (int),
+ *   file position of every tile, row of tiles after row of tiles, and of the end of the last one (longs),
+ *   then the tiles. Tiles at the right and bottom edges are cut to the image.
+ * Each tile holds, per plane, in the order red, green, blue, alpha, either
+ *   CONSTANT and the byte of every pixel, or
+ *   CODED, the RowFilter type of every row (one byte each), the code lengths (HuffmanTable.writeLengths),
+ *   the number of code bytes (int) and the codes of the plane's filtered bytes, row after row
+ * Version 2 files have no tile size and index, their one tile is the whole image. Version 1 files also have
+ * no row filters, their planes' bytes are coded as they are.
+ *
+ * Nothing here touches Swing or needs a display, so batch workers can run it with java.awt.headless=true;
+ * ImageViewer is the optional viewer.
+ */
+public class ImageCodec {
+    public static final int FORMAT_VERSION = 3;           // bumped when the file layout changes
+    public static final int DEFAULT_TILE_SIZE = 256;      // pixels across and down a tile
+    static final byte[] magic = {'H', 'I', 'M', 'G'};
+
+    // where each plane's byte sits in an ARGB pixel, in the order the planes are written
+    static final int[] planeShifts = {16, 8, 0, 24};
+    // how a plane is stored
+    static final int CONSTANT = 0, CODED = 1;
+
+    /**
+     * @param pathName file to check
+     * @return whether the file starts like one written by compress
+     */
+    public static boolean isCompressedImage(String pathName){
+        try (FileInputStream input = new FileInputStream(pathName)) {
+            byte[] header = new byte[magic.length];
+            return input.read(header) == header.length && Arrays.equals(header, magic);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads all pixels at once, as non-premultiplied ARGB values in row-major order.
+     * For the int and byte layouts ImageIO usually returns, the raster's DataBuffer is read directly,
+     * skipping the color model; any other image is converted with one bulk getRGB call.
+     * @param img image to read
+     * @return one int per pixel, row after row; the image's own array for TYPE_INT_ARGB, so don't change it
+     */
+    public static int[] argbPixels(BufferedImage img){
+        int width = img.getWidth();
+        int height = img.getHeight();
+        WritableRaster raster = img.getRaster();
+        SampleModel model = raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+
+        // only rasters that own their whole buffer, one pixel after the other with no padding
+        boolean packed = raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0 && buffer.getNumBanks() == 1 && buffer.getOffset() == 0;
+
+        if (packed && buffer instanceof DataBufferInt && model instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) model).getScanlineStride() == width) {
+            int[] data = ((DataBufferInt) buffer).getData();
+            if (img.getType() == BufferedImage.TYPE_INT_ARGB) {
+                return data;
+            }
+            if (img.getType() == BufferedImage.TYPE_INT_RGB) {
+                int[] pixels = new int[width * height];
+                for (int i = 0; i < pixels.length; i++) { pixels[i] = 0xFF000000 | data[i]; }
+                return pixels;
+            }
+        }
+        if (packed && model instanceof PixelInterleavedSampleModel
+                && buffer instanceof DataBufferByte
+                && (img.getType() == BufferedImage.TYPE_3BYTE_BGR || img.getType() == BufferedImage.TYPE_4BYTE_ABGR)) {
+            boolean alpha = img.getType() == BufferedImage.TYPE_4BYTE_ABGR;
+            int stride = alpha ? 4 : 3;
+            if (((PixelInterleavedSampleModel) model).getScanlineStride() == width * stride) {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                int[] pixels = new int[width * height];
+                for (int i = 0, b = 0; i < pixels.length; i++, b += stride) {
+                    int a = alpha ? data[b] & 0xFF : 0xFF;
+                    int blue = alpha ? b + 1 : b;       // then green and red
+                    pixels[i] = a << 24 | (data[blue + 2] & 0xFF) << 16 | (data[blue + 1] & 0xFF) << 8 | (data[blue] & 0xFF);
+                }
+                return pixels;
+            }
+        }
+
+        // anything else goes through the color model, but in one call
+        return img.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Reads an image file. Nothing here needs a display, so it works with java.awt.headless=true.
+     * @param pathName file to read, in any format ImageIO knows
+     * @return the image
+     * @throws IOException if the file can't be read or isn't an image
+     */
+    public static BufferedImage loadImage(String pathName) throws IOException {
+        BufferedImage img = ImageIO.read(new File(pathName));
+        if (img == null) { throw new IOException(pathName + " is not an image ImageIO can read"); }
+        return img;
+    }
+
+    /**
+     * Compresses in tiles of DEFAULT_TILE_SIZE, one thread per processor
+     * @param img image to compress
+     * @param pathName where to write the compressed image, replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public static void compress(BufferedImage img, String pathName) throws IOException {
+        compress(img, pathName, DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param img image to compress
+     * @param pathName where to write the compressed image, replaced if it exists
+     * @param tileSize pixels across and down a tile; bigger tiles code a little better, smaller ones make
+     *                 region decodes cheaper
+     * @param threads most tiles encoded at the same time
+     * @throws IOException if the file can't be written
+     */
+    public static void compress(BufferedImage img, String pathName, int tileSize, int threads) throws IOException {
+        if (tileSize <= 0) { throw new IllegalArgumentException("Tile size must be positive"); }
+        int[] pixels = argbPixels(img);
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int tilesAcross = (width + tileSize - 1) / tileSize;
+        int tilesDown = (height + tileSize - 1) / tileSize;
+
+        // encode all tiles, each into its own array
+        List<byte[]> tiles = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<byte[]>> encoded = new ArrayList<>();
+            for (int ty = 0; ty < tilesDown; ty++) {
+                for (int tx = 0; tx < tilesAcross; tx++) {
+                    int x = tx * tileSize, y = ty * tileSize;
+                    int w = Math.min(tileSize, width - x), h = Math.min(tileSize, height - y);
+                    encoded.add(executor.submit(() -> encodeTile(pixels, width, x, y, w, h)));
+                }
+            }
+            for (Future<byte[]> tile : encoded) { tiles.add(tile.get()); }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding tiles");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Cannot encode tile: " + e.getCause().getMessage(), e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pathName), 1 << 16))) {
+            output.write(magic);
+            output.writeByte(FORMAT_VERSION);
+            output.writeInt(width);
+            output.writeInt(height);
+            output.writeInt(tileSize);
+            output.writeInt(tileSize);
+
+            // tile index, the first tile starts right after it
+            long position = output.size() + 8L * (tiles.size() + 1);
+            for (byte[] tile : tiles) {
+                output.writeLong(position);
+                position += tile.length;
+            }
+            output.writeLong(position);
+
+            for (byte[] tile : tiles) { output.write(tile); }
+        }
+    }
+
+    /**
+     * Codes one tile's planes
+     * @param pixels the whole image, row after row
+     * @param width pixels per row of the image
+     * @param x column of the tile's top left pixel
+     * @param y row of the tile's top left pixel
+     * @param w pixels across the tile
+     * @param h pixels down the tile
+     * @return the tile as it is written to the file
+     * @throws IOException if a plane's codes don't fit in an array
+     */
+    private static byte[] encodeTile(int[] pixels, int width, int x, int y, int w, int h) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        // reused for every plane
+        byte[] plane = new byte[w * h];
+        byte[] filtered = new byte[w * h];
+        byte[] filters = new byte[h];
+        long[] histogram = new long[HuffmanTable.SYMBOLS];
+        HuffmanTable table = new HuffmanTable();
+        BitArrayWriter bits = new BitArrayWriter();
+
+        for (int shift : planeShifts) {
+            Arrays.fill(histogram, 0);
+            for (int row = 0, i = 0; row < h; row++) {
+                for (int p = (y + row) * width + x, end = p + w; p < end; p++, i++) {
+                    plane[i] = (byte)(pixels[p] >>> shift);
+                    histogram[plane[i] & 0xFF]++;
+                }
+            }
+
+            // same byte everywhere: nothing to code
+            if (histogram[plane[0] & 0xFF] == plane.length) {
+                output.writeByte(CONSTANT);
+                output.writeByte(plane[0]);
+                continue;
+            }
+
+            // filter, and count what is left to code
+            Arrays.fill(histogram, 0);
+            for (int row = 0; row < h; row++) {
+                filters[row] = (byte)RowFilter.filterRow(plane, w, row, filtered);
+            }
+            for (byte b : filtered) { histogram[b & 0xFF]++; }
+
+            table.build(histogram);
+            long codeBytes = (table.encodedBits(histogram) + 7) / 8;
+            if (codeBytes > Integer.MAX_VALUE - 8) { throw new IOException("Tile too big to code by plane"); }
+
+            byte[] lengths = new byte[table.lengthsSize()];
+            table.writeLengths(lengths, 0);
+            byte[] codes = new byte[(int)codeBytes];
+            bits.reset(codes, 0);
+            table.encode(bits, filtered, 0, filtered.length);
+            bits.flush();
+
+            output.writeByte(CODED);
+            output.write(filters);
+            output.write(lengths);
+            output.writeInt(codes.length);
+            output.write(codes);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a whole image, one thread per processor
+     * @param pathName file written by compress
+     * @return the image, TYPE_INT_ARGB
+     * @throws IOException if the file can't be read, or isn't a compressed image of a known version
+     */
+    public static BufferedImage decompress(String pathName) throws IOException {
+        CompressedImage image = new CompressedImage(pathName);
+        try {
+            return image.readRegion(0, 0, image.getWidth(), image.getHeight(), Runtime.getRuntime().availableProcessors());
+        }
+        finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Decodes part of an image, only the tiles the region touches, one thread per processor
+     * @param pathName file written by compress
+     * @param x column of the region's top left pixel
+     * @param y row of the region's top left pixel
+     * @param w pixels across the region
+     * @param h pixels down the region
+     * @return the region, TYPE_INT_ARGB
+     * @throws IOException if the file can't be read, or isn't a compressed image of a known version
+     */
+    public static BufferedImage decompressRegion(String pathName, int x, int y, int w, int h) throws IOException {
+        CompressedImage image = new CompressedImage(pathName);
+        try {
+            return image.readRegion(x, y, w, h, Runtime.getRuntime().availableProcessors());
+        }
+        finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Usage: java ImageCodec compress image compressedImage [tileSize]
+     *        java ImageCodec decompress compressedImage output
+     * The output's extension picks its format: .rgba or .ppm for raw pixels, else an ImageIO format like .png
+     */
+    public static void main(String[] args) throws IOException {
+        if ((args.length == 3 || args.length == 4) && args[0].equals("compress")) {
+            int tileSize = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_TILE_SIZE;
+            compress(loadImage(args[1]), args[2], tileSize, Runtime.getRuntime().availableProcessors());
+        }
+        else if (args.length == 3 && args[0].equals("decompress")) {
+            String output = args[2];
+            String extension = output.substring(output.lastIndexOf('.') + 1);
+            if (extension.equals("rgba") || extension.equals("ppm")) {
+                CompressedImage image = new CompressedImage(args[1]);
+                try {
+                    image.writeRaw(output, extension.equals("rgba") ? RawImage.RGBA : RawImage.PPM, Runtime.getRuntime().availableProcessors());
+                }
+                finally {
+                    image.close();
+                }
+            }
+            else if (!ImageIO.write(decompress(args[1]), extension, new File(output))) {
+                System.err.println("No image writer for " + extension);
+            }
+        }
+        else {
+            System.err.println("Usage: java ImageCodec compress image compressedImage [tileSize]\n"
+                    + "       java ImageCodec decompress compressedImage output.png|output.rgba|output.ppm");
+        }
+    }
+}
@@ -7,44 +7,41 @@ import java.util.StringTokenizer;
 import java.awt.image.*;
 
 
-public class ImageCompression extends DrawingGUI{
+public class ImageCompression {
 
 
-    private static boolean debugFlag = false;         // used to check if the code is working
+    private static final boolean debugFlag = false;         // used to check if the code is working
                                                       // 't' for test cases, 'w' for war and peace, 'u' for us constitution
     // delimiters used for tree string (helpful for parsing a Newick tree)
-    private static String delimiter1 = String.valueOf((char)(29));
-    private static String delimiter2 = String.valueOf((char)(30));
-    private static String delimiter3 = String.valueOf((char)(31));
+    private static final String delimiter1 = String.valueOf((char)(29));
+    private static final String delimiter2 = String.valueOf((char)(30));
+    private static final String delimiter3 = String.valueOf((char)(31));
     // delimiter to determine when tree string ends and compressed file begins
-    private static char endOfTreeIndicator = (char)(28);
-    // used in Newick parsing to take care of boundary case
-    private static Boolean hasRightChild;
+    private static final char endOfTreeIndicator = (char)(28);
+    // longest code codeTable can pack together with its length
+    public static final int MAX_CODE_LENGTH = 57;
 
 
     /**
      * @param img name of image
      * @return a map with all colors in an image(keys as an int) and their corresponding frequency(value)
      */
-    public static Map<Integer, Integer> frequencyTable(BufferedImage img){
-        // create a map to be returned with all characters and their frequency
-        Map<Integer, Integer> colorFrequencies = new HashMap<>();
+    public static IntLongHashMap frequencyTable(BufferedImage img){
+        return frequencyTable(ImageCodec.argbPixels(img));
+    }
 
-        // Open the image file
+    /**
+     * @param pixels ARGB value of every pixel, see ImageCodec.argbPixels
+     * @return a map with all colors (keys as an int) and their corresponding frequency(value)
+     */
+    public static IntLongHashMap frequencyTable(int[] pixels){
+        // create a map to be returned with all colors and their frequency, no boxing per pixel
+        IntLongHashMap colorFrequencies = new IntLongHashMap();
 
         // Read the image colors pixel by pixel
-        for(int j = 0; j< img.getHeight(); j++){
-            for(int i = 0; i< img.getWidth(); i++){
-                int c = img.getRGB(i, j);
-                // if it's already in the map add 1 to the frequency
-                if(colorFrequencies.containsKey(c)){
-                    colorFrequencies.put(c, colorFrequencies.get(c)+1);
-                }
-                // else create a new key for the character with value 1
-                else{
-                    colorFrequencies.put(c, 1);
-                }
-            }
+        for (int c : pixels) {
+            // add 1 to the frequency, starting at 1 for a new color
+            colorFrequencies.add(c, 1);
         }
 
         // used for debugging purposes
@@ -60,16 +57,24 @@ public class ImageCompression extends DrawingGUI{
      * @return a queue with binary trees for every color in the image
      */
     public static PriorityQueue<BinaryTree<ImageNodeData>> colorFrequencyQueue(BufferedImage img){
+        return colorFrequencyQueue(ImageCodec.argbPixels(img));
+    }
+
+    /**
+     * @param pixels ARGB value of every pixel, see ImageCodec.argbPixels
+     * @return a queue with binary trees for every color in the image
+     */
+    public static PriorityQueue<BinaryTree<ImageNodeData>> colorFrequencyQueue(int[] pixels){
         // use function that returns a map with all characters and their frequencies
-        Map<Integer, Integer> frequencyTable = frequencyTable(img);
+        IntLongHashMap frequencyTable = frequencyTable(pixels);
         // create a queue to be returned and pass it a compare function as a parameter
-        PriorityQueue<BinaryTree<ImageNodeData>> queue = new PriorityQueue<>(new ColorComparator());
+        PriorityQueue<BinaryTree<ImageNodeData>> queue = new PriorityQueue<>(Math.max(1, frequencyTable.size()), new ColorComparator());
 
         // make sure there are characters in the file
         if(!frequencyTable.isEmpty()){
-            for(Object c: frequencyTable.keySet()){
+            for(int c: frequencyTable.keys()){
                 // create a new node with character and frequency given by the map
-                ImageNodeData d = new ImageNodeData((int)c, frequencyTable.get(c));
+                ImageNodeData d = new ImageNodeData(c, frequencyTable.get(c, 0));
                 BinaryTree<ImageNodeData> b = new BinaryTree<>(d);
                 // add tree (node) to the queue
                 queue.add(b);
@@ -89,10 +94,18 @@ public class ImageCompression extends DrawingGUI{
      * @return Huffman code tree, binary tree which ranks higher priority colors
      */
     public static BinaryTree<ImageNodeData> colorTree(BufferedImage img){
+        return colorTree(ImageCodec.argbPixels(img));
+    }
+
+    /**
+     * @param pixels ARGB value of every pixel, see ImageCodec.argbPixels
+     * @return Huffman code tree, binary tree which ranks higher priority colors
+     */
+    public static BinaryTree<ImageNodeData> colorTree(int[] pixels){
         // create a new tree to be returned
         BinaryTree<ImageNodeData> colorTree;
         // construct queue with a node for every character
-        PriorityQueue<BinaryTree<ImageNodeData>> queue = colorFrequencyQueue(img);
+        PriorityQueue<BinaryTree<ImageNodeData>> queue = colorFrequencyQueue(pixels);
 
         // make sure there are elements inside the queue
         if(queue.size() == 0){ return null;}
@@ -181,6 +194,40 @@ public class ImageCompression extends DrawingGUI{
         }
     }
 
+    /**
+     * @param tree to retrieve codes from
+     * @return for every color its code and the code's length, packed into one long as code << 6 | length
+     */
+    public static IntLongHashMap codeTable(BinaryTree<ImageNodeData> tree){
+        IntLongHashMap codes = new IntLongHashMap();
+        if (tree != null && tree.size() != 0) {
+            codeTableHelper(codes, tree, 0, 0);
+        }
+        return codes;
+    }
+
+    /**
+     * Helper method for codeTable, like codeRetrievalHelper with the path kept in the bits of a long
+     * @param codes map that keeps all colors and their packed codes
+     * @param tree subtree to add the codes of
+     * @param code path taken to get to the subtree, 0 is left and 1 is right
+     * @param length number of steps taken
+     */
+    private static void codeTableHelper(IntLongHashMap codes, BinaryTree<ImageNodeData> tree, long code, int length){
+        if (tree.isLeaf()) {
+            codes.put(tree.getData().getColor(), code << 6 | length);
+            return;
+        }
+        // an image would need far more pixels than an array can hold for a code this long
+        if (length == MAX_CODE_LENGTH) { throw new IllegalArgumentException("Code longer than " + MAX_CODE_LENGTH + " bits"); }
+        if (tree.hasLeft()) {
+            codeTableHelper(codes, tree.getLeft(), code << 1, length + 1);
+        }
+        if (tree.hasRight()) {
+            codeTableHelper(codes, tree.getRight(), code << 1 | 1, length + 1);
+        }
+    }
+
     /**
      * @param tree tree to parse into a string
      * @return sring ((c:#, c:#):#,(c:#, c:#):#):#
@@ -189,7 +236,7 @@ public class ImageCompression extends DrawingGUI{
     public static String treeToString(BinaryTree<ImageNodeData> tree){
         String treeString = "";
         if(tree == null){
-            return delimiter1+delimiter2+delimiter3+endOfTreeIndicator;
+            return delimiter1+delimiter2+delimiter3;
         }
         if(!tree.isLeaf()){
             treeString = delimiter1;
@@ -218,10 +265,37 @@ public class ImageCompression extends DrawingGUI{
      * @param imagePathName the path name for the original image we wish to compress
      */
     public static void compress(String imagePathName){
+        compress(imagePathName, false);
+    }
+
+    /**
+     * Compresses an image with one code for its colors, or with ImageCodec's code per color channel
+     * @param imagePathName the path name for the original image we wish to compress
+     * @param byChannel whether to code the red, green, blue and alpha planes separately, better for photos
+     */
+    public static void compress(String imagePathName, boolean byChannel){
         // create map with all characters and string with path
-        BufferedImage img = loadImage(imagePathName);
-        BinaryTree<ImageNodeData> tree = colorTree(img);
-        Map<Integer, String> codeMap = codeRetrieval(tree);
+        BufferedImage img;
+        try {
+            img = ImageCodec.loadImage(imagePathName);
+        }
+        catch (IOException e) {
+            System.err.println("Couldn't load image from `" + imagePathName + "' -- make sure the file exists in that folder");
+            return;
+        }
+        if (byChannel) {
+            String compressedPathName = imagePathName.substring(0, imagePathName.length()-4) + "_compressedEC.txt";
+            try {
+                ImageCodec.compress(img, compressedPathName);
+            }
+            catch (IOException e) {
+                System.err.println("IO error while writing.\n" + e.getMessage());
+            }
+            return;
+        }
+        int[] pixels = ImageCodec.argbPixels(img);
+        BinaryTree<ImageNodeData> tree = colorTree(pixels);
+        IntLongHashMap codeTable = codeTable(tree);
         BufferedBitWriterEC output;
         // direction for compressed file
         String compressedPathName = imagePathName.substring(0, imagePathName.length()-4) + "_compressedEC.txt";
@@ -229,7 +303,7 @@ public class ImageCompression extends DrawingGUI{
 
         // Open the output file, if possible
         try {
-            output = new BufferedBitWriterEC(compressedPathName);
+            output = new BufferedBitWriterEC(compressedPathName, 4L * pixels.length);
         }
         catch (IOException e) {
             System.err.println("Cannot open file.\n" + e.getMessage());
@@ -242,36 +316,25 @@ public class ImageCompression extends DrawingGUI{
             output.writeString(img.getWidth()+"x"+img.getHeight()+ delimiter1);
             // write tree used to compress, to be retrieved when decompressed
             output.writeString(treeToString(tree) + endOfTreeIndicator);
+            // number of code bits, filled in once they are all written
+            output.reserveBitCount();
 
 
-            // Read the image colors pixel by pixel
-            for (int j = 0; j < img.getHeight(); j++) {
-                for (int i = 0; i < img.getWidth(); i++) {
-                    //Retrieve its code from the map
-                    String colorCode = codeMap.get(img.getRGB(i, j));
-
-                    for (int k = 0; k < colorCode.length(); k++) {
-                        // if it's to the right in the binary tree
-                        if (colorCode.charAt(k) == '1') {
-                            output.writeBit(true);
+            // Read the image colors pixel by pixel, row after row
+            for (int pixel : pixels) {
+                //Retrieve its code from the table
+                long entry = codeTable.get(pixel, 0);
+                int length = (int)(entry & 63);
 
-                            // used for debugging purposes,
-                            // to see if compression works
-                            if (debugFlag) {
-                                System.out.println("true");
+                // write the code's bits from the first step down, 1 is to the right in the binary tree
+                for (int k = length - 1; k >= 0; k--) {
+                    boolean bit = ((entry >>> (6 + k)) & 1) != 0;
+                    output.writeBit(bit);
 
-                            }
-                        }
-                        // if to the left
-                        else {
-                            output.writeBit(false);
-
-                            // used for debugging purposes,
-                            // to see if compression works
-                            if (debugFlag) {
-                                System.out.println("false");
-                            }
-                        }
+                    // used for debugging purposes,
+                    // to see if compression works
+                    if (debugFlag) {
+                        System.out.println(bit);
                     }
                 }
             }
@@ -314,17 +377,17 @@ public class ImageCompression extends DrawingGUI{
             // Inner node
             BinaryTree<ImageNodeData> left = parseNewick(st);
             String comma = st.nextToken();
-            hasRightChild = true;
+            // a missing right child consumes the closing delimiter itself
             BinaryTree<ImageNodeData> right = parseNewick(st);
-            if(hasRightChild) {
+            if(right != null) {
                 String close = st.nextToken();
             }
             String label = st.nextToken();
 
             String[] pieces = label.split(":");
-            int frequency;
+            long frequency;
 
-            if(hasRightChild) {
+            if(right != null) {
                 frequency = left.getData().getFrequency() + right.getData().getFrequency();
             } else{
                 frequency = left.getData().getFrequency();
@@ -335,14 +398,14 @@ public class ImageCompression extends DrawingGUI{
         // Leaf
         else {
 
+            // no right child, the encoder's tree has none either
             if (token.equals(delimiter3)){
-                hasRightChild = false;
-                return new BinaryTree<>(null);
+                return null;
             }
 
             else{
                 String[] pieces = token.split(":");
-                return new BinaryTree<ImageNodeData>(new ImageNodeData(Integer.parseInt(pieces[0]), Integer.parseInt(pieces[1])), null, null);
+                return new BinaryTree<ImageNodeData>(new ImageNodeData(Integer.parseInt(pieces[0]), Long.parseLong(pieces[1])), null, null);
             }
         }
     }
@@ -353,22 +416,74 @@ public class ImageCompression extends DrawingGUI{
      * @param fileName file to be decompressed
      */
     public static void decompress(String fileName) {
-        // retrieve binary tree with characters as leaves
-        BinaryTree<ImageNodeData> huffmanTree;
-
-        BufferedImage result;
-        BufferedBitReaderEC input;
+        decompress(fileName, "png");
+    }
 
+    /**
+     * Decompresses an image into a file of the given format. The raw formats skip compressing the pixels
+     * again, and images coded by ImageCodec are decoded into them tile by tile, straight into the mapped file.
+     * @param fileName file to be decompressed
+     * @param format "png", "rgba" for raw RGBA bytes (see RawImage) or "ppm"
+     */
+    public static void decompress(String fileName, String format) {
+        if (!format.equals("png") && !format.equals("rgba") && !format.equals("ppm")) {
+            System.err.println("Unknown image format " + format);
+            return;
+        }
         // where to send decompressed file
-        String decompressedPathName = fileName.substring(0, fileName.length() - 17) + "_decompressedEC.png";
+        String decompressedPathName = fileName.substring(0, fileName.length() - 17) + "_decompressedEC." + format;
+
+        if (format.equals("png")) {
+            BufferedImage result;
+            try {
+                result = decompressImage(fileName);
+            } catch (IOException e) {
+                System.err.println("IO error while reading.\n" + e.getMessage());
+                return;
+            }
+            saveResult(result, decompressedPathName);
+            return;
+        }
 
-        // Open the input file, if possible, else stop process
+        // raw bytes, no second compression
+        int rawFormat = format.equals("rgba") ? RawImage.RGBA : RawImage.PPM;
         try {
-            input = new BufferedBitReaderEC(fileName);
+            if (ImageCodec.isCompressedImage(fileName)) {
+                // tile by tile, with no whole image in memory
+                CompressedImage image = new CompressedImage(fileName);
+                try {
+                    image.writeRaw(decompressedPathName, rawFormat, Runtime.getRuntime().availableProcessors());
+                }
+                finally {
+                    image.close();
+                }
+            }
+            else {
+                RawImage.write(decompressImage(fileName), decompressedPathName, rawFormat);
+            }
+            System.out.println("Saved decompress image in " + decompressedPathName);
         } catch (IOException e) {
-            System.err.println("IO error while reading.\n" + e.getMessage());
-            return;
+            System.err.println("IO error while decompressing.\n" + e.getMessage());
         }
+    }
+
+    /**
+     * Decompresses an image into memory, with no file written
+     * @param fileName file to be decompressed, by compress in either mode
+     * @return the image, TYPE_INT_ARGB
+     * @throws IOException if the file can't be read or isn't a compressed image
+     */
+    public static BufferedImage decompressImage(String fileName) throws IOException {
+        // coded by channel: ImageCodec reads it all
+        if (ImageCodec.isCompressedImage(fileName)) {
+            return ImageCodec.decompress(fileName);
+        }
+
+        // retrieve binary tree with characters as leaves
+        BinaryTree<ImageNodeData> huffmanTree;
+
+        BufferedImage result;
+        BufferedBitReaderEC input = new BufferedBitReaderEC(fileName);
 
         // go over input file and write over blank image
         try {
@@ -383,8 +498,13 @@ public class ImageCompression extends DrawingGUI{
             String[] dimensions = imageDimensions.split("x");
             // create blank result with same dimensions
             result = new BufferedImage(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), BufferedImage.TYPE_INT_ARGB);
+            // the pixels of the result, row after row, filled in directly
+            int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
 
-            System.out.println("___________");
+            // used for debugging purposes
+            if (debugFlag) {
+                System.out.println("___________");
+            }
 
             // retrieve tree used to compare
             String treeString = "";
@@ -398,9 +518,9 @@ public class ImageCompression extends DrawingGUI{
 
             // start at head of binary tree
             BinaryTree<ImageNodeData> t = huffmanTree;
-            int x = 0;          // pixel x coordinate
-            int y = 0;          // pixel y coordinate
-            while (input.hasNext()) {
+            int p = 0;          // index of the next pixel, row after row
+            // as many bits as the file says, no end of file checks
+            for (long bits = input.readBitCount(); bits > 0; bits--) {
                 boolean bit = input.readBit();                     // read bit
                 // have not yet gotten to the end of the character code
                 if (!t.isLeaf()) {
@@ -428,45 +548,36 @@ public class ImageCompression extends DrawingGUI{
                     // check to see if we have found the character, now that we moved
                     if (t.isLeaf()) {
                         // write to decompressed file and restart current tree node for next search
-                        result.setRGB(x, y, t.getData().getColor());
+                        if (p == pixels.length) { throw new IOException("More pixels than the image has"); }
+                        pixels[p++] = t.getData().getColor();
                         t = huffmanTree;
 
-                        x += 1;
-
                         // used for debugging
                         if (debugFlag) {
                             System.out.println("found");
                         }
                     }
-                    // end of image row: restart x value, move in y
-                    if (x == Integer.parseInt(dimensions[0])) {
-                        x = 0;
-                        y += 1;
-                    }
-
                 }
 
             }
-        } catch (IOException e) {
-            System.err.println("IO error while reading.\n" + e.getMessage());
-            return;
-        }
-
-        // Close the input file, if possible
-        try {
+        } finally {
             input.close();
-        } catch (IOException e) {
-            System.err.println("Cannot close file.\n" + e.getMessage());
         }
+        return result;
+    }
 
+    /**
+     * Writes a decompressed image as a png
+     * @param result image to write
+     * @param decompressedPathName where to write it
+     */
+    private static void saveResult(BufferedImage result, String decompressedPathName){
         try {
             ImageIO.write(result, "png", new File(decompressedPathName));
             System.out.println("Saved decompress image in " + decompressedPathName);
         } catch (Exception e) {
             System.err.println("Couldn't save snapshot in `" + decompressedPathName + "' -- make sure the folder exists");
         }
-
-
     }
 
 }
@@ -1,12 +1,12 @@
 public class ImageNodeData {
     private int color;
-    private int frequency;
+    private long frequency;
 
     /**
      * @param frequency keeps track of frequency of children
      *                  doesn't take a color parameter
      */
-    public ImageNodeData(int frequency){
+    public ImageNodeData(long frequency){
         this.frequency = frequency;
     }
 
@@ -15,18 +15,18 @@ public class ImageNodeData {
      * @param color value of color at node
      * @param frequency number of times color appears in image
      */
-    public ImageNodeData(int color, int frequency){
+    public ImageNodeData(int color, long frequency){
         this.color = color;
         this.frequency = frequency;
     }
 
     // setters
     public void setColor(int color){this.color = color;}
-    public void setFrequency(int frequency){this.frequency = frequency;}
+    public void setFrequency(long frequency){this.frequency = frequency;}
 
     // getters
     public int getColor(){return color;}
-    public int getFrequency(){return frequency;}
+    public long getFrequency(){return frequency;}
 
     // Override default toString()
     public String toString(){
@@ -0,0 +1,204 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.swing.*;
+
+/**
+ * Shows an image written by ImageCodec while it is being decoded. Background threads decode the tiles
+ * nearest the middle of the window first, and the timer paints the tiles done so far every few milliseconds,
+ * so the first screenful appears as soon as its own tiles are decoded instead of after the whole image.
+ * Images bigger than the window are moved around with the w, a, s and d keys; tiles coming into view
+ * are decoded next. Tiles that can't be decoded are painted red, and the error is shown in the window.
+ */
+public class ImageViewer extends DrawingGUI {
+    private static final long serialVersionUID = 1L;
+    private static final int maxWindowWidth = 1280, maxWindowHeight = 800;
+    private static final int repaintDelay = 20;         // milliseconds between paints while tiles come in
+
+    private final CompressedImage image;
+    private final BufferedImage[][] tiles;              // decoded tiles, [ty][tx], null until painted; Swing thread only
+    private final boolean[][] failed;                   // tiles that couldn't be decoded; Swing thread only
+    private String error;                               // the first decoding error, null if none; Swing thread only
+    private final boolean[][] claimed;                  // tiles a decoder has taken, guarded by this
+    private final ConcurrentLinkedQueue<DecodedTile> done = new ConcurrentLinkedQueue<>();   // decoded, not yet painted
+    private int tilesLeft;                              // tiles not yet painted; Swing thread only
+    private volatile int viewX, viewY;                  // image pixel at the top left of the window
+
+    /**
+     * A tile handed from a decoder to the Swing thread, or why it couldn't be decoded
+     */
+    private static final class DecodedTile {
+        final int tx, ty;
+        final BufferedImage pixels;         // null if decoding failed
+        final String error;                 // null if decoding worked
+
+        DecodedTile(int tx, int ty, BufferedImage pixels, String error){
+            this.tx = tx;
+            this.ty = ty;
+            this.pixels = pixels;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Opens the image, shows the window and starts decoding. Call on the Swing thread.
+     * @param pathName file written by ImageCodec
+     * @throws IOException if the file can't be read, or isn't a compressed image
+     */
+    public ImageViewer(String pathName) throws IOException {
+        super(pathName);
+        image = new CompressedImage(pathName);
+        tiles = new BufferedImage[image.getTilesDown()][image.getTilesAcross()];
+        claimed = new boolean[image.getTilesDown()][image.getTilesAcross()];
+        failed = new boolean[image.getTilesDown()][image.getTilesAcross()];
+        tilesLeft = image.getTilesAcross() * image.getTilesDown();
+
+        initWindow(Math.min(image.getWidth(), maxWindowWidth), Math.min(image.getHeight(), maxWindowHeight));
+        setTimerDelay(repaintDelay);
+        startTimer();
+
+        for (int d = 0; d < Runtime.getRuntime().availableProcessors(); d++) {
+            Thread decoder = new Thread(this::decodeTiles, "tile decoder " + d);
+            decoder.setDaemon(true);
+            decoder.start();
+        }
+    }
+
+    /**
+     * Decodes one tile after the other until none are left, run by every decoder thread.
+     * A tile that fails is handed on as failed, so every tile is accounted for and the others still decoded.
+     */
+    private void decodeTiles(){
+        int[] next;
+        while ((next = nextTile()) != null) {
+            int tx = next[0], ty = next[1];
+            try {
+                int[] pixels = image.decodeTile(tx, ty);
+                BufferedImage tile = new BufferedImage(image.tileWidth(tx), image.tileHeight(ty), BufferedImage.TYPE_INT_ARGB);
+                System.arraycopy(pixels, 0, ((DataBufferInt) tile.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+                done.add(new DecodedTile(tx, ty, tile, null));
+            }
+            catch (IOException | RuntimeException e) {
+                System.err.println("Cannot decode tile " + tx + "," + ty + ".\n" + e.getMessage());
+                done.add(new DecodedTile(tx, ty, null, "Cannot decode tile " + tx + "," + ty + ": " + e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Claims the tile not yet taken whose middle is closest to the middle of the window
+     * @return tile column and row, or null once all tiles are taken
+     */
+    private synchronized int[] nextTile(){
+        long centerX = viewX + width / 2, centerY = viewY + height / 2;
+        int[] best = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (int ty = 0; ty < claimed.length; ty++) {
+            for (int tx = 0; tx < claimed[ty].length; tx++) {
+                if (claimed[ty][tx]) { continue; }
+                long dx = (long)tx * image.getTileWidth() + image.tileWidth(tx) / 2 - centerX;
+                long dy = (long)ty * image.getTileHeight() + image.tileHeight(ty) / 2 - centerY;
+                if (dx * dx + dy * dy < bestDistance) {
+                    best = new int[] {tx, ty};
+                    bestDistance = dx * dx + dy * dy;
+                }
+            }
+        }
+        if (best != null) { claimed[best[1]][best[0]] = true; }
+        return best;
+    }
+
+    /**
+     * Takes the tiles decoded since the last time and paints them, stopping once all are painted
+     */
+    @Override
+    public void handleTimer(){
+        DecodedTile tile;
+        boolean any = false;
+        while ((tile = done.poll()) != null) {
+            if (tile.error != null) {
+                failed[tile.ty][tile.tx] = true;
+                if (error == null) { error = tile.error; }
+            }
+            tiles[tile.ty][tile.tx] = tile.pixels;
+            tilesLeft--;
+            any = true;
+        }
+        if (any) { repaint(); }
+        if (tilesLeft == 0) {
+            stopTimer();
+            try {
+                image.close();
+            }
+            catch (IOException e) {
+                System.err.println("Cannot close file.\n" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves the window over the image by a quarter of its size: w up, a left, s down, d right
+     */
+    @Override
+    public void handleKeyPress(char key){
+        int x = viewX, y = viewY;
+        if (key == 'w') { y -= height / 4; }
+        else if (key == 's') { y += height / 4; }
+        else if (key == 'a') { x -= width / 4; }
+        else if (key == 'd') { x += width / 4; }
+        else { return; }
+        viewX = Math.max(0, Math.min(x, image.getWidth() - width));
+        viewY = Math.max(0, Math.min(y, image.getHeight() - height));
+        repaint();
+    }
+
+    /**
+     * Paints the decoded tiles in view, gray where tiles are still missing and red where they failed,
+     * then the first error if there was one
+     */
+    @Override
+    public void draw(Graphics g){
+        g.setColor(Color.gray);
+        g.fillRect(0, 0, width, height);
+        int tileWidth = image.getTileWidth(), tileHeight = image.getTileHeight();
+        for (int ty = viewY / tileHeight; ty <= Math.min(tiles.length - 1, (viewY + height - 1) / tileHeight); ty++) {
+            for (int tx = viewX / tileWidth; tx <= Math.min(tiles[ty].length - 1, (viewX + width - 1) / tileWidth); tx++) {
+                if (tiles[ty][tx] != null) {
+                    g.drawImage(tiles[ty][tx], tx * tileWidth - viewX, ty * tileHeight - viewY, null);
+                }
+                else if (failed[ty][tx]) {
+                    g.setColor(Color.red);
+                    g.fillRect(tx * tileWidth - viewX, ty * tileHeight - viewY, image.tileWidth(tx), image.tileHeight(ty));
+                }
+            }
+        }
+        if (error != null) {
+            g.setColor(Color.black);
+            g.fillRect(0, 0, width, 20);
+            g.setColor(Color.white);
+            g.drawString(error, 5, 15);
+        }
+    }
+
+    /**
+     * Usage: java ImageViewer compressedImage
+     */
+    public static void main(String[] args){
+        if (args.length != 1) {
+            System.err.println("Usage: java ImageViewer compressedImage");
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            try {
+                new ImageViewer(args[0]);
+            }
+            catch (IOException e) {
+                System.err.println("Cannot open image.\n" + e.getMessage());
+                System.exit(-1);
+            }
+        });
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * Map from int keys to long values without boxing: open addressing with linear probing in arrays
+ * whose length is a power of two, kept at most half full. Every int is a valid key.
+ * Meant for color histograms and color to code tables, where a HashMap<Integer, ...> would create
+ * an object per entry. Entries can't be removed. Not safe to share between threads while being changed.
+ */
+public class IntLongHashMap {
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;         // whether a slot holds an entry, so 0 can be a key too
+    private int mask;               // capacity - 1
+    private int size;
+
+    /**
+     * A map with room for 8 entries before growing
+     */
+    public IntLongHashMap(){
+        this(8);
+    }
+
+    /**
+     * @param expectedSize number of entries the map should hold without growing
+     */
+    public IntLongHashMap(int expectedSize){
+        int capacity = Integer.highestOneBit(Math.max(2, 2 * expectedSize - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity){
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the first slot to look for a key in, Fibonacci hashing so nearby colors spread out
+     */
+    private int slot(int key){
+        return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(keys.length)) & mask;
+    }
+
+    /**
+     * @return the slot holding key, or the empty slot where it belongs
+     */
+    private int find(int key){
+        int s = slot(key);
+        while (used[s] && keys[s] != key) {
+            s = (s + 1) & mask;
+        }
+        return s;
+    }
+
+    /**
+     * @param key key to look up
+     * @param missing value to return if the key isn't in the map
+     * @return the key's value, or missing
+     */
+    public long get(int key, long missing){
+        int s = find(key);
+        return used[s] ? values[s] : missing;
+    }
+
+    /**
+     * @param key key to look up
+     * @return whether the map has a value for it
+     */
+    public boolean containsKey(int key){
+        return used[find(key)];
+    }
+
+    /**
+     * @param key key to set
+     * @param value new value for the key
+     */
+    public void put(int key, long value){
+        int s = find(key);
+        if (!used[s]) { s = insert(key, s); }
+        values[s] = value;
+    }
+
+    /**
+     * Adds to the value of a key, starting from 0 for a new key; counting is one probe
+     * @param key key to change
+     * @param delta amount to add
+     * @return the new value
+     */
+    public long add(int key, long delta){
+        int s = find(key);
+        if (!used[s]) { s = insert(key, s); }
+        return values[s] += delta;
+    }
+
+    /**
+     * Takes an empty slot for a new key, growing first if the map would be more than half full
+     * @return the key's slot
+     */
+    private int insert(int key, int s){
+        if (2 * (size + 1) > keys.length) {
+            grow();
+            s = find(key);
+        }
+        used[s] = true;
+        keys[s] = key;
+        size++;
+        return s;
+    }
+
+    private void grow(){
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(2 * oldKeys.length);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int s = find(oldKeys[i]);
+                used[s] = true;
+                keys[s] = oldKeys[i];
+                values[s] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @return whether there are no keys
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * @return all keys, in no particular order
+     */
+    public int[] keys(){
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) { result[n++] = keys[i]; }
+        }
+        return result;
+    }
+
+    // Override default toString()
+    public String toString(){
+        StringBuilder s = new StringBuilder("{");
+        int[] sorted = keys();
+        Arrays.sort(sorted);
+        for (int key : sorted) {
+            if (s.length() > 1) { s.append(", "); }
+            s.append(key).append('=').append(get(key, 0));
+        }
+        return s.append('}').toString();
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory for reading, so reads are plain memory copies with no system call once the
+ * file is in the page cache. One MappedByteBuffer can't cover more than 2 GB, so the file is mapped in
+ * chunks of CHUNK_SIZE bytes and reads crossing a chunk boundary are split.
+ * Reads only use absolute positions, so one input can be shared by any number of threads.
+ */
+public class MappedInput {
+    public static final int CHUNK_SIZE = 1 << 30;     // bytes per mapping
+
+    private final FileChannel channel;
+    private final long length;
+    private final MappedByteBuffer[] chunks;          // chunk c starts at file position c * CHUNK_SIZE
+
+    /**
+     * @param pathName file to map
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public MappedInput(String pathName) throws IOException {
+        channel = FileChannel.open(Paths.get(pathName), StandardOpenOption.READ);
+        try {
+            length = channel.size();
+            chunks = new MappedByteBuffer[(int)((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long)c * CHUNK_SIZE;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+            }
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return length of the file when it was mapped
+     */
+    public long length(){
+        return length;
+    }
+
+    /**
+     * @param position file position
+     * @return the byte there, from 0 to 255, or -1 at or past the end of the file
+     */
+    public int get(long position){
+        if (position < 0 || position >= length) { return -1; }
+        return chunks[(int)(position / CHUNK_SIZE)].get((int)(position % CHUNK_SIZE)) & 0xFF;
+    }
+
+    /**
+     * @param position file position of the first byte
+     * @param output array to copy to
+     * @param offset index of output to copy the first byte to
+     * @param count number of bytes
+     * @throws EOFException if the file ends first
+     */
+    public void get(long position, byte[] output, int offset, int count) throws EOFException {
+        if (position < 0 || position + count > length) { throw new EOFException("File cut short"); }
+        while (count > 0) {
+            MappedByteBuffer chunk = chunks[(int)(position / CHUNK_SIZE)];
+            int inChunk = (int)(position % CHUNK_SIZE);
+            int n = Math.min(count, chunk.limit() - inChunk);
+            chunk.get(inChunk, output, offset, n);
+            position += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until they are garbage collected, but must not be read any more.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
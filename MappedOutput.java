@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file of known length written through memory mappings: the file is sized once up front and writes are
+ * plain memory copies, left to the operating system to write back.
+ * Like MappedInput, the file is mapped in chunks of at most MappedInput.CHUNK_SIZE bytes.
+ * Writes only use absolute positions, so threads may fill different parts of the file at once.
+ */
+public class MappedOutput {
+    private final FileChannel channel;
+    private final long length;
+    private final MappedByteBuffer[] chunks;          // chunk c starts at file position c * CHUNK_SIZE
+
+    /**
+     * @param pathName file to write, replaced if it exists
+     * @param length exact length of the file
+     * @throws IOException if the file can't be created or mapped
+     */
+    public MappedOutput(String pathName, long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(pathName, "rw");
+        channel = file.getChannel();
+        this.length = length;
+        try {
+            file.setLength(length);
+            chunks = new MappedByteBuffer[(int)((length + MappedInput.CHUNK_SIZE - 1) / MappedInput.CHUNK_SIZE)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long)c * MappedInput.CHUNK_SIZE;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(MappedInput.CHUNK_SIZE, length - start));
+            }
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return length of the file
+     */
+    public long length(){
+        return length;
+    }
+
+    /**
+     * @param position file position of the first byte
+     * @param input bytes to write
+     * @param offset index of input of the first byte
+     * @param count number of bytes
+     * @throws IOException if the bytes don't fit in the file
+     */
+    public void put(long position, byte[] input, int offset, int count) throws IOException {
+        if (position < 0 || position + count > length) { throw new IOException("Write past the end of the file"); }
+        while (count > 0) {
+            MappedByteBuffer chunk = chunks[(int)(position / MappedInput.CHUNK_SIZE)];
+            int inChunk = (int)(position % MappedInput.CHUNK_SIZE);
+            int n = Math.min(count, chunk.limit() - inChunk);
+            chunk.put(inChunk, input, offset, n);
+            position += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Closes the file. What was written reaches it even if the mappings aren't forced to disk.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,92 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An uncompressed image file being written, for pipelines that process the pixels next and would only
+ * undo a PNG's compression again:
+ *   RGBA is 4 bytes per pixel, red, green, blue, alpha, row after row, with no header
+ *   PPM is binary PPM (P6): a short text header with the size, then red, green, blue per pixel, alpha dropped
+ * The file is sized up front and written through a MappedOutput, so pixels are plain memory copies, in any
+ * order, and several threads may write different pixels at once.
+ */
+public class RawImage {
+    public static final int RGBA = 0, PPM = 1;          // file formats
+
+    private final MappedOutput output;
+    private final int format;
+    private final int width, height;
+    private final int bytesPerPixel;
+    private final long pixelStart;                      // file position of the first pixel, after the header
+
+    /**
+     * Creates the file at its full length and writes the header
+     * @param pathName file to write, replaced if it exists
+     * @param format RGBA or PPM
+     * @param width pixels per row
+     * @param height number of rows
+     * @throws IOException if the file can't be created
+     */
+    public RawImage(String pathName, int format, int width, int height) throws IOException {
+        if (format != RGBA && format != PPM) { throw new IllegalArgumentException("Unknown raw format " + format); }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        bytesPerPixel = format == PPM ? 3 : 4;
+
+        byte[] header = format == PPM ? ("P6\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        pixelStart = header.length;
+        output = new MappedOutput(pathName, pixelStart + (long)width * height * bytesPerPixel);
+        output.put(0, header, 0, header.length);
+    }
+
+    /**
+     * Writes pixels of one row
+     * @param x column of the first pixel
+     * @param y row of the pixels
+     * @param pixels ARGB pixels to write
+     * @param offset index of pixels of the first one
+     * @param count number of pixels, all in row y
+     * @throws IOException if the pixels are not inside the image
+     */
+    public void putPixels(int x, int y, int[] pixels, int offset, int count) throws IOException {
+        if (x < 0 || y < 0 || y >= height || x + count > width) { throw new IOException("Pixels outside the image"); }
+        byte[] bytes = new byte[count * bytesPerPixel];
+        for (int i = 0, b = 0; i < count; i++) {
+            int pixel = pixels[offset + i];
+            bytes[b++] = (byte)(pixel >>> 16);
+            bytes[b++] = (byte)(pixel >>> 8);
+            bytes[b++] = (byte)pixel;
+            if (format == RGBA) { bytes[b++] = (byte)(pixel >>> 24); }
+        }
+        output.put(pixelStart + ((long)y * width + x) * bytesPerPixel, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Closes the file
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Writes a whole image
+     * @param img image to write
+     * @param pathName file to write, replaced if it exists
+     * @param format RGBA or PPM
+     * @throws IOException if the file can't be written
+     */
+    public static void write(BufferedImage img, String pathName, int format) throws IOException {
+        int[] pixels = ImageCodec.argbPixels(img);
+        RawImage raw = new RawImage(pathName, format, img.getWidth(), img.getHeight());
+        try {
+            for (int y = 0; y < img.getHeight(); y++) {
+                raw.putPixels(0, y, pixels, y * img.getWidth(), img.getWidth());
+            }
+        }
+        finally {
+            raw.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * PNG's row filters for a plane of bytes, one byte per pixel: each byte is replaced by its difference from
+ * a prediction made from the pixels left of it, above it, or both. Smooth images turn into many small
+ * differences, far fewer distinct bytes for a Huffman code than the pixels themselves.
+ * Pixels outside the image count as 0, as in PNG.
+ *
+ * Filters are chosen row by row with PNG's heuristic: the one whose differences, taken as signed bytes,
+ * have the smallest sum of absolute values.
+ */
+public class RowFilter {
+    // filter types, as numbered by PNG
+    public static final int NONE = 0;         // the byte itself
+    public static final int SUB = 1;          // difference from the pixel to the left
+    public static final int UP = 2;           // difference from the pixel above
+    public static final int AVERAGE = 3;      // difference from the mean of left and above, rounded down
+    public static final int PAETH = 4;        // difference from whichever of left, above, above left is closest to left + above - above left
+    public static final int TYPES = 5;
+
+    /**
+     * Filters one row with the filter that suits it best
+     * @param plane original bytes of the plane, row after row
+     * @param width pixels per row
+     * @param y row to filter
+     * @param output where to write the filtered row, at the same place as in plane
+     * @return the filter type used
+     */
+    public static int filterRow(byte[] plane, int width, int y, byte[] output){
+        int best = NONE;
+        long bestCost = Long.MAX_VALUE;
+        for (int type = NONE; type < TYPES; type++) {
+            long cost = 0;
+            for (int x = 0; x < width; x++) {
+                cost += Math.abs((byte)(plane[y * width + x] - predict(type, plane, width, x, y)));
+            }
+            if (cost < bestCost) {
+                best = type;
+                bestCost = cost;
+            }
+        }
+
+        for (int x = 0, i = y * width; x < width; x++, i++) {
+            output[i] = (byte)(plane[i] - predict(best, plane, width, x, y));
+        }
+        return best;
+    }
+
+    /**
+     * Undoes filterRow in place. The rows above must already be unfiltered.
+     * @param type filter type filterRow returned for the row
+     * @param plane filtered bytes, turned back into the original ones
+     * @param width pixels per row
+     * @param y row to unfilter
+     */
+    public static void unfilterRow(int type, byte[] plane, int width, int y){
+        // left to right, so the pixel to the left is always original again
+        for (int x = 0, i = y * width; x < width; x++, i++) {
+            plane[i] = (byte)(plane[i] + predict(type, plane, width, x, y));
+        }
+    }
+
+    /**
+     * @return the filter's prediction for pixel (x, y), from the original bytes left of and above it
+     */
+    private static int predict(int type, byte[] plane, int width, int x, int y){
+        int i = y * width + x;
+        int left = x > 0 ? plane[i - 1] & 0xFF : 0;
+        int up = y > 0 ? plane[i - width] & 0xFF : 0;
+        switch (type) {
+            case SUB: return left;
+            case UP: return up;
+            case AVERAGE: return (left + up) >>> 1;
+            case PAETH: return paeth(left, up, x > 0 && y > 0 ? plane[i - width - 1] & 0xFF : 0);
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return whichever of left, up and upLeft is closest to left + up - upLeft, ties in that order
+     */
+    private static int paeth(int left, int up, int upLeft){
+        int p = left + up - upLeft;
+        int pLeft = Math.abs(p - left);
+        int pUp = Math.abs(p - up);
+        int pUpLeft = Math.abs(p - upLeft);
+        if (pLeft <= pUp && pLeft <= pUpLeft) { return left; }
+        if (pUp <= pUpLeft) { return up; }
+        return upLeft;
+    }
+}
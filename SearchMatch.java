@@ -0,0 +1,29 @@
+/**
+ * A place where CompressedSearch found its pattern
+ */
+public class SearchMatch {
+    private final long offset;     // position of the match in the original file
+    private final long record;     // number of the record (line) the match starts in
+    private final String line;     // that line, if asked for, else null
+
+    /**
+     * @param offset position of the match in the original file
+     * @param record number of the record the match starts in
+     * @param line the record's text, or null
+     */
+    public SearchMatch(long offset, long record, String line){
+        this.offset = offset;
+        this.record = record;
+        this.line = line;
+    }
+
+    // getters
+    public long getOffset(){return offset;}
+    public long getRecord(){return record;}
+    public String getLine(){return line;}
+
+    // Override default toString()
+    public String toString(){
+        return line == null ? offset + ":" + record : offset + ":" + record + ":" + line;
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression of an input split across many workers, all using one code built from their summed histograms:
+ *   1. every worker counts its shard:       java ShardCompression count shard shared/worker1.hist
+ *   2. the coordinator sums the counts:     java ShardCompression merge shared id shared/dictionary_id.hdic
+ *   3. every worker compresses its shard:   java ShardCompression compress shard shared/dictionary_id.hdic shard.hsh
+ *   4. the compressed shards are simply concatenated, in order, and decompress as one file:
+ *                                           java ShardCompression decompress all.hsh output shared
+ *
+ * A compressed shard is a sequence of frames with no file header, so concatenated shards are still valid:
+ * every frame is its compressed length (int) followed by a HuffmanEncoder block referring to the dictionary.
+ */
+public class ShardCompression {
+    public static final int FRAME_SIZE = 1 << 20;       // original bytes per frame
+
+    /**
+     * @param fileName the shard to compress
+     * @param shardPath where to write the compressed shard
+     * @param dictionary code built from the histograms of all shards
+     * @throws IOException if reading or writing fails
+     */
+    public static void compress(String fileName, String shardPath, HuffmanDictionary dictionary) throws IOException {
+        HuffmanEncoder encoder = new HuffmanEncoder(dictionary);
+        byte[] frame = new byte[FRAME_SIZE];
+        byte[] compressed = new byte[HuffmanEncoder.maxCompressedLength(FRAME_SIZE)];
+
+        try (InputStream input = new FileInputStream(fileName);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(shardPath), 1 << 16))) {
+            int n;
+            while ((n = input.readNBytes(frame, 0, FRAME_SIZE)) > 0) {
+                int length = encoder.compress(frame, 0, n, compressed, 0);
+                output.writeInt(length);
+                output.write(compressed, 0, length);
+            }
+        }
+    }
+
+    /**
+     * @param shardPath one compressed shard, or several concatenated
+     * @param fileName where to write the original bytes
+     * @param dictionaries where to find the dictionary the shards were compressed with
+     * @throws IOException if reading or writing fails, or a frame is corrupt
+     */
+    public static void decompress(String shardPath, String fileName, DictionaryRegistry dictionaries) throws IOException {
+        HuffmanDecoder decoder = new HuffmanDecoder(dictionaries);
+        byte[] compressed = new byte[0];
+        byte[] frame = new byte[0];
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(shardPath), 1 << 16));
+             OutputStream output = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16)) {
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                }
+                catch (EOFException e) {
+                    break;          // no more frames
+                }
+                if (length < 0) { throw new IOException("Corrupt frame length"); }
+                compressed = HuffmanEncoder.ensureCapacity(compressed, length);
+                input.readFully(compressed, 0, length);
+
+                frame = HuffmanEncoder.ensureCapacity(frame, HuffmanDecoder.decompressedLength(compressed, 0, length));
+                int n = decoder.decompress(compressed, 0, length, frame, 0);
+                output.write(frame, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Usage: see the class comment
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("count")) {
+            Histogram histogram = new Histogram();
+            histogram.addFile(args[1]);
+            histogram.save(args[2]);
+        }
+        else if (args.length == 4 && args[0].equals("merge")) {
+            Histogram histogram = Histogram.mergeDirectory(args[1]);
+            histogram.toDictionary(Integer.parseInt(args[2])).save(args[3]);
+            System.out.println("Built dictionary " + args[2] + " from " + histogram);
+        }
+        else if (args.length == 4 && args[0].equals("compress")) {
+            compress(args[1], args[3], HuffmanDictionary.load(args[2]));
+        }
+        else if (args.length == 4 && args[0].equals("decompress")) {
+            decompress(args[1], args[2], new DictionaryRegistry(args[3]));
+        }
+        else {
+            System.err.println("Usage: java ShardCompression count shard histogramFile\n"
+                    + "       java ShardCompression merge histogramFolder id dictionaryFile\n"
+                    + "       java ShardCompression compress shard dictionaryFile compressedShard\n"
+                    + "       java ShardCompression decompress compressedShards output dictionaryFolder");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Decompresses files written by TextEncoder.
+ * Keeps no state between calls, so one decoder can be shared by any number of threads.
+ */
+public class TextDecoder {
+
+    private static final boolean debugFlag = false;   // used to check if the code is working
+
+    /**
+     * Reads the code tree at the start of a compressed file
+     * @param input compressed file, positioned at its first byte
+     * @return Huffman code tree the file was compressed with
+     * @throws IOException if the file ends before the tree does
+     */
+    public BinaryTree<CData> readTree(BufferedBitReaderEC input) throws IOException {
+        StringBuilder treeString = new StringBuilder();
+        char current = input.readCharacter();
+        while (current != HuffmanEncodingEC.endOfTreeIndicator) {
+            treeString.append(current);
+            current = input.readCharacter();
+        }
+        return HuffmanEncodingEC.parseNewick(treeString.toString());
+    }
+
+    /**
+     * Decodes the rest of a compressed file, one character per path from the root to a leaf
+     * @param input compressed file, positioned after its tree, at the number of code bits
+     * @param huffmanTree tree the file was compressed with
+     * @param output where to write the characters
+     * @throws IOException if reading or writing fails
+     */
+    public void decode(BufferedBitReaderEC input, BinaryTree<CData> huffmanTree, Writer output) throws IOException {
+        // start at head of binary tree
+        BinaryTree<CData> t = huffmanTree;
+        // as many bits as the file says, no end of file checks
+        for (long bits = input.readBitCount(); bits > 0; bits--) {
+            boolean bit = input.readBit();                     // read bit
+            // have not yet gotten to the end of the character code
+            if (!t.isLeaf()) {
+                // if bit is a 1, move right on the tree, if it's a 0 move left
+                t = bit ? t.getRight() : t.getLeft();
+
+                // used for debugging purposes,
+                // to see if decompression works
+                if (debugFlag) { System.out.println(bit ? "right" : "left"); }
+
+                // check to see if we have found the character, now that we moved
+                if (t.isLeaf()) {
+                    // write to decompressed file and restart current tree node for next search
+                    output.write(t.getData().getCharacter());
+                    t = huffmanTree;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompresses a whole file
+     * @param compressedPathName file written by TextEncoder
+     * @param decompressedPathName where to write the original text
+     * @throws IOException if either file can't be opened, or reading or writing fails
+     */
+    public void decompress(String compressedPathName, String decompressedPathName) throws IOException {
+        BufferedBitReaderEC input = new BufferedBitReaderEC(compressedPathName);
+        try (Writer output = new BufferedWriter(new FileWriter(decompressedPathName))) {
+            decode(input, readTree(input), output);
+        }
+        finally {
+            input.close();
+        }
+    }
+}
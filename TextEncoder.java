@@ -0,0 +1,80 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Compresses text files with a fixed Huffman code tree.
+ * Immutable once built, so one encoder can be shared by any number of threads.
+ */
+public class TextEncoder {
+
+    private static final boolean debugFlag = false;   // used to check if the code is working
+
+    private final BinaryTree<CData> tree;                // code tree, written as the header of every file
+    private final Map<Character, String> codeMap;        // path to every character in the tree
+    private final String header;                         // Newick tree followed by the end of tree indicator
+
+    /**
+     * @param tree Huffman code tree to encode with, null for an empty file
+     */
+    public TextEncoder(BinaryTree<CData> tree){
+        this.tree = tree;
+        this.codeMap = Collections.unmodifiableMap(HuffmanEncodingEC.codeRetrieval(tree));
+        this.header = HuffmanEncodingEC.treeToString(tree) + HuffmanEncodingEC.endOfTreeIndicator;
+    }
+
+    /**
+     * @param fileName file to count characters from
+     * @return an encoder with the Huffman code tree of the file
+     */
+    public static TextEncoder forFile(String fileName){
+        return new TextEncoder(HuffmanEncodingEC.tree(fileName));
+    }
+
+    // getters
+    public BinaryTree<CData> getTree(){return tree;}
+    public Map<Character, String> getCodeMap(){return codeMap;}
+
+    /**
+     * Writes the code tree, the number of code bits and a sequence of 0's and 1's to a compressed file
+     * @param fileName the path name for the document to compress, may only use characters of this encoder's tree
+     * @param compressedPathName where to write the compressed file
+     * @throws IOException if either file can't be opened, or the text has a character without a code
+     */
+    public void compress(String fileName, String compressedPathName) throws IOException {
+        try (BufferedReader input = new BufferedReader(new FileReader(fileName))) {
+            // the codes rarely take more room than the text itself
+            BufferedBitWriterEC output = new BufferedBitWriterEC(compressedPathName, header.length() + 8 + new File(fileName).length());
+            try {
+                // tree used to compress, to be retrieved when decompressed
+                output.writeString(header);
+                // number of code bits, filled in once they are all written
+                output.reserveBitCount();
+
+                int c;
+                // as long as there are characters to read
+                while ((c = input.read()) != -1) {
+                    // find in map
+                    String characterCode = codeMap.get((char)c);
+                    if (characterCode == null) {
+                        throw new IOException("No code for character " + (char)c);
+                    }
+                    // used for debugging purposes,
+                    // to see if compression works
+                    if (debugFlag) {
+                        System.out.println(characterCode);}
+                    // loop over code to convert to bit, 1 is to the right in the binary tree
+                    for (int i = 0; i < characterCode.length(); i++) {
+                        output.writeBit(characterCode.charAt(i) == '1');
+                    }
+                }
+            }
+            finally {
+                output.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.IOException;
+
+/**
+ * Variable length encoding of non-negative numbers used in compressed headers:
+ * 7 bits per byte, least significant group first, high bit set on every byte but the last.
+ */
+public class VarInt {
+    public static final int MAX_SIZE = 10;              // bytes needed for the largest long
+
+    /**
+     * @param value number to measure
+     * @return number of bytes write uses for it
+     */
+    public static int size(long value){
+        int size = 1;
+        while ((value >>>= 7) != 0) { size++; }
+        return size;
+    }
+
+    /**
+     * @param output array to write to
+     * @param offset index of the first byte
+     * @param value number to write, non-negative
+     * @return index after the last byte written
+     */
+    public static int write(byte[] output, int offset, long value){
+        while ((value & ~0x7FL) != 0) {
+            output[offset++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output[offset++] = (byte)value;
+        return offset;
+    }
+
+    /**
+     * @param input array to read from
+     * @param offset index of the first byte
+     * @param end index after the last byte that may be read
+     * @return the number; read the same number's size to know how far to move on
+     * @throws IOException if the number is cut short
+     */
+    public static long read(byte[] input, int offset, int end) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset >= end) { throw new IOException("Number cut short"); }
+            int b = input[offset++];
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) { return value; }
+        }
+        throw new IOException("Number too long");
+    }
+}
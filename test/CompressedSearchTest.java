@@ -0,0 +1,76 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Regression checks for CompressedSearch on matches that run across block boundaries.
+ * Compile with the main classes and run, e.g. javac -d out *.java test/*.java && java -cp out CompressedSearchTest
+ * Prints every failed check and exits with -1 if there was one.
+ */
+public class CompressedSearchTest {
+    private static int failures = 0;
+
+    /**
+     * A match that starts in one block, runs through a block shorter than the pattern and ends in a third,
+     * the blocks of a file appended to twice
+     */
+    private static void matchAcrossThreeBlocks() throws IOException {
+        File dir = Files.createTempDirectory("search").toFile();
+        File text = new File(dir, "text.txt");
+        File archive = new File(dir, "text.huf");
+        try {
+            Files.write(text.toPath(), "zzzab\n".getBytes(StandardCharsets.US_ASCII));
+            HuffmanArchive.compress(text.getPath(), archive.getPath());
+            HuffmanArchive.append(archive.getPath(), "Q\n".getBytes(StandardCharsets.US_ASCII));
+            HuffmanArchive.append(archive.getPath(), "dq\n".getBytes(StandardCharsets.US_ASCII));
+
+            ArchiveReader reader = new ArchiveReader(archive.getPath());
+            try {
+                check(reader.getBlockCount() == 3, "archive should have 3 blocks, has " + reader.getBlockCount());
+                checkMatch(reader, "ab\nQ\nd", 3, 0);
+                checkMatch(reader, "b\nQ\nd", 4, 0);
+                checkMatch(reader, "\nQ\ndq", 5, 0);
+                checkMatch(reader, "Q\ndq", 6, 1);
+            }
+            finally {
+                reader.close();
+            }
+        }
+        finally {
+            archive.delete();
+            text.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Checks that the pattern is found exactly once, where expected
+     */
+    private static void checkMatch(ArchiveReader reader, String pattern, long offset, long record) throws IOException {
+        List<SearchMatch> matches = CompressedSearch.search(reader, pattern.getBytes(StandardCharsets.US_ASCII), false);
+        String name = "\"" + pattern.replace("\n", "\\n") + "\"";
+        if (check(matches.size() == 1, name + " should match once, matches " + matches.size() + " times")) {
+            check(matches.get(0).getOffset() == offset, name + " should match at " + offset + ", not " + matches.get(0).getOffset());
+            check(matches.get(0).getRecord() == record, name + " should match in record " + record + ", not " + matches.get(0).getRecord());
+        }
+    }
+
+    /**
+     * @return whether the check passed
+     */
+    private static boolean check(boolean passed, String message){
+        if (!passed) {
+            System.err.println("FAILED: " + message);
+            failures++;
+        }
+        return passed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        matchAcrossThreeBlocks();
+        if (failures > 0) { System.exit(-1); }
+        System.out.println("All checks passed");
+    }
+}